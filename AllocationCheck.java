@@ -0,0 +1,124 @@
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+// Allocation check: after a warm-up, updateStock, getStockPrice and getAmountStocksInPriceRange of a
+// new StockManager() must allocate nothing, and the same with B+ tree indexes.
+// Exits with status 1 if one of them did. The TREE history is not checked - every event it keeps is a HistoryNode
+// with a boxed Long and Float, see HistoryBackend.
+// The throughput and the allocation rate of every operation are measured by the JMH benchmarks in jmh/
+//
+// Run: java AllocationCheck
+public class AllocationCheck {
+    private static final float PRICE_RANGE = 1000; // the prices are spread in [1, 1 + PRICE_RANGE]
+    // the price differences of the updates, boxed once - boxing them in every call would be counted as an allocation
+    private static final Float UP = 0.01f;
+    private static final Float DOWN = -0.01f;
+    private static final int STOCKS = 10000;
+    // a bulk loaded tree is packed tighter than the updates keep it, so the warm-up is long enough for the trees
+    // to reach the shape the updates keep them in - until then they grow, and their splits allocate
+    private static final int WARMUP = 1000000;
+    private static final int OPERATIONS = 200000;
+
+    private final StockManager manager;
+    private final String name;
+    private final Random random = new Random(42);
+    private final String[] stockIds = new String[STOCKS];
+    private long nextTimestamp;
+    private int nextUpdatedStock;   // the stocks are updated in turn
+    private final Float[] rangeLows = new Float[1024]; // the ranges, boxed before the check like UP and DOWN
+    private final Float[] rangeHighs = new Float[rangeLows.length];
+    private int nextRange;
+
+    private AllocationCheck(StockManager manager, String name) {
+        this.manager = manager;
+        this.name = name;
+    }
+
+    public static void main(String[] args) {
+        HistoryBackend backend = StockManager.DEFAULT_HISTORY_BACKEND;
+        boolean allocated = new AllocationCheck(new StockManager(), "default").run();
+        allocated |= new AllocationCheck(new StockManager(backend, IndexBackend.B_PLUS, IndexBackend.B_PLUS),
+                IndexBackend.B_PLUS.toString()).run();
+        System.exit(allocated ? 1 : 0);
+    }
+
+    // Every operation runs WARMUP times to warm up and then OPERATIONS times measured.
+    // updateStock is measured alone, after reserveHistories made room for all its events.
+    // Returns true if an operation allocated
+    private boolean run() {
+        setUp();
+        reserveHistories();
+        boolean allocated = check("updateStock", this::updateStock);
+        allocated |= check("getStockPrice", this::getStockPrice);
+        allocated |= check("getAmountStocksInPriceRange", this::getAmountStocksInPriceRange);
+        return allocated;
+    }
+
+    // Load the stocks in bulk, one event each
+    private void setUp() {
+        long[][] timestamps = new long[STOCKS][1];
+        float[][] prices = new float[STOCKS][1];
+        for (int i = 0; i < STOCKS; i++) {
+            stockIds[i] = "S" + i;
+            timestamps[i][0] = 1;
+            prices[i][0] = 1 + random.nextFloat() * PRICE_RANGE;
+        }
+        manager.loadStocks(stockIds, timestamps, prices);
+        nextTimestamp = 2;
+        for (int i = 0; i < rangeLows.length; i++) {
+            rangeLows[i] = 1 + random.nextFloat() * PRICE_RANGE;
+            rangeHighs[i] = rangeLows[i] + PRICE_RANGE / 100;
+        }
+    }
+
+    // Give every stock in turn the events updateStock will add in the check, and remove them again.
+    // A history that grows keeps the events it is given, which is no garbage, but would be counted as allocated -
+    // the histories keep the slots of the removed events, so the updates of the check fill them without growing
+    private void reserveHistories() {
+        long first = nextTimestamp;
+        for (int i = 0; i < WARMUP + OPERATIONS; i++) {
+            updateStock();
+        }
+        for (long timestamp = first; timestamp < nextTimestamp; timestamp++) {
+            manager.removeStockTimestamp(stockIds[(int) ((timestamp - first) % STOCKS)], timestamp);
+        }
+    }
+
+    private boolean check(String operationName, Runnable operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long overhead = Long.MAX_VALUE;     // reading the counter allocates too
+        for (int i = 0; i < 10; i++) {
+            long before = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - before);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run();
+        }
+        long bytes = allocatedBytes() - before - overhead;
+        System.out.printf("%-10s %-34s %8.3f bytes/op %s%n", name, operationName, (double) bytes / OPERATIONS,
+                (bytes <= 0) ? "ok" : "ALLOCATED");
+        return bytes > 0;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void updateStock() {
+        manager.updateStock(stockIds[nextUpdatedStock], nextTimestamp++, random.nextBoolean() ? UP : DOWN);
+        nextUpdatedStock = (nextUpdatedStock + 1) % STOCKS;
+    }
+
+    private void getStockPrice() {
+        manager.getStockPrice(stockIds[random.nextInt(STOCKS)]);
+    }
+
+    private void getAmountStocksInPriceRange() {
+        manager.getAmountStocksInPriceRange(rangeLows[nextRange], rangeHighs[nextRange]);
+        nextRange = (nextRange + 1) % rangeLows.length;
+    }
+}
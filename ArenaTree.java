@@ -0,0 +1,568 @@
+import java.util.Arrays;
+
+// 2-3 tree of long keys and float values, with the same insert/search/delete/rank/successor operations as Tree.
+// Instead of a Node object per node, every node is an index into primitive arrays (struct of arrays),
+// so a tree of millions of events is a handful of arrays the garbage collector does not need to trace.
+// Deleted nodes are kept in a free list and their indexes are reused by the next insert.
+public class ArenaTree implements StockHistory {
+    public static final int NIL = -1; // the "null" node
+    public static final long LONG_SENTINEL_MAX = Long.MAX_VALUE;
+    public static final long LONG_SENTINEL_MIN = Long.MIN_VALUE;
+
+    private long[] key;     // leaf - its key, inner node - the maximum key in its subtree
+    private float[] value;
+    private int[] left;     // a node is a leaf if its left child is NIL
+    private int[] middle;
+    private int[] right;
+    private int[] parent;   // for nodes in the free list - the next free node
+    private int[] size;     // number of leaves in the subtree, without sentinels
+    private double[] sum;   // sum of the values of the leaves in the subtree
+    private double[] minPrefix; // the lowest and the highest sum of a prefix of the leaves of the subtree, like in Node
+    private double[] maxPrefix;
+
+    private int root;
+    private int used;       // nodes [0, used) were given out at least once
+    private int freeList;   // first free node, or NIL
+    private long checkpoint = Long.MIN_VALUE; // see checkpointTimestamp
+
+    public ArenaTree() {
+        this(16);
+    }
+
+    public ArenaTree(int capacity) {
+        allocate(Math.max(capacity, 4));
+        int x = newNode(LONG_SENTINEL_MAX, 0);
+        int l = newNode(LONG_SENTINEL_MIN, 0);
+        int m = newNode(LONG_SENTINEL_MAX, 0);
+        makeSentinel(l);
+        makeSentinel(m);
+        setChildren(x, l, m, NIL);
+        this.root = x;
+    }
+
+    // Build the tree bottom up from keys sorted in increasing order, like the bulk constructor of Tree - O(n).
+    // Keys may be equal, as insert allows
+    public ArenaTree(long[] sortedKeys, float[] values) {
+        if (sortedKeys.length != values.length) {
+            throw new IllegalArgumentException();
+        }
+        allocate(2 * sortedKeys.length + 4); // the inner nodes of a 2-3 tree are fewer than its leaves
+        int[] level = new int[sortedKeys.length + 2];
+        level[0] = newNode(LONG_SENTINEL_MIN, 0);
+        makeSentinel(level[0]);
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (sortedKeys[i] < key[level[i]] || sortedKeys[i] == LONG_SENTINEL_MIN || sortedKeys[i] == LONG_SENTINEL_MAX) {
+                throw new IllegalArgumentException();
+            }
+            level[i + 1] = newNode(sortedKeys[i], values[i]);
+        }
+        level[level.length - 1] = newNode(LONG_SENTINEL_MAX, 0);
+        makeSentinel(level[level.length - 1]);
+        while (level.length > 1) {
+            int parentsCount = (level.length + 2) / 3;
+            int parentsWithTwoChildren = 3 * parentsCount - level.length;
+            int[] parents = new int[parentsCount];
+            int c = 0;
+            for (int p = 0; p < parentsCount; p++) {
+                parents[p] = newNode(0, 0);
+                if (p < parentsCount - parentsWithTwoChildren) {
+                    setChildren(parents[p], level[c], level[c + 1], level[c + 2]);
+                    c += 3;
+                } else {
+                    setChildren(parents[p], level[c], level[c + 1], NIL);
+                    c += 2;
+                }
+            }
+            level = parents;
+        }
+        this.root = level[0];
+        parent[root] = NIL;
+    }
+
+    private void allocate(int capacity) {
+        key = new long[capacity];
+        value = new float[capacity];
+        left = new int[capacity];
+        middle = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        size = new int[capacity];
+        sum = new double[capacity];
+        minPrefix = new double[capacity];
+        maxPrefix = new double[capacity];
+        used = 0;
+        freeList = NIL;
+    }
+
+    private void grow() {
+        int capacity = key.length * 2;
+        key = Arrays.copyOf(key, capacity);
+        value = Arrays.copyOf(value, capacity);
+        left = Arrays.copyOf(left, capacity);
+        middle = Arrays.copyOf(middle, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        size = Arrays.copyOf(size, capacity);
+        sum = Arrays.copyOf(sum, capacity);
+        minPrefix = Arrays.copyOf(minPrefix, capacity);
+        maxPrefix = Arrays.copyOf(maxPrefix, capacity);
+    }
+
+    // Take a node from the free list, or a new one from the end of the arrays
+    private int newNode(long k, float v) {
+        int x;
+        if (freeList != NIL) {
+            x = freeList;
+            freeList = parent[x];
+        } else {
+            if (used == key.length) {
+                grow();
+            }
+            x = used++;
+        }
+        key[x] = k;
+        value[x] = v;
+        left[x] = NIL;
+        middle[x] = NIL;
+        right[x] = NIL;
+        parent[x] = NIL;
+        size[x] = 1;
+        sum[x] = v;
+        minPrefix[x] = v;
+        maxPrefix[x] = v;
+        return x;
+    }
+
+    // A sentinel leaf is not counted in the size and has no prefix sum
+    private void makeSentinel(int x) {
+        size[x] = 0;
+        minPrefix[x] = Double.POSITIVE_INFINITY;
+        maxPrefix[x] = Double.NEGATIVE_INFINITY;
+    }
+
+    private void freeNode(int x) {
+        left[x] = NIL;
+        middle[x] = NIL;
+        right[x] = NIL;
+        parent[x] = freeList;
+        freeList = x;
+    }
+
+    // Set the children of x and update its key, size, sum and extreme prefix sums - O(1), the caller updates the ancestors
+    private void setChildren(int x, int l, int m, int r) {
+        left[x] = l;
+        middle[x] = m;
+        right[x] = r;
+        parent[l] = x;
+        if (m != NIL) {
+            parent[m] = x;
+        }
+        if (r != NIL) {
+            parent[r] = x;
+        }
+        updateNode(x);
+    }
+
+    private void updateNode(int x) {
+        int l = left[x], m = middle[x], r = right[x];
+        key[x] = r != NIL ? key[r] : (m != NIL ? key[m] : key[l]);
+        size[x] = size[l] + (m != NIL ? size[m] : 0) + (r != NIL ? size[r] : 0);
+        sum[x] = sum[l] + (m != NIL ? sum[m] : 0) + (r != NIL ? sum[r] : 0);
+        double min = minPrefix[l], max = maxPrefix[l];
+        if (m != NIL) {
+            min = Math.min(min, sum[l] + minPrefix[m]);
+            max = Math.max(max, sum[l] + maxPrefix[m]);
+        }
+        if (r != NIL) {
+            min = Math.min(min, sum[l] + sum[m] + minPrefix[r]);
+            max = Math.max(max, sum[l] + sum[m] + maxPrefix[r]);
+        }
+        minPrefix[x] = min;
+        maxPrefix[x] = max;
+    }
+
+    // Insert a new leaf and return it
+    public int insert(long k, float v) {
+        int z = newNode(k, v);
+        int y = this.root;
+        while (left[y] != NIL) {
+            if (k < key[left[y]]) {
+                y = left[y];
+            } else if (k < key[middle[y]]) {
+                y = middle[y];
+            } else {
+                y = right[y];
+            }
+        }
+        int x = parent[y];
+        int leaf = z;
+        int previous = (y == left[x]) ? NIL : (y == middle[x]) ? left[x] : middle[x]; // the child before y
+        z = insertAndSplit(x, z, previous);
+        while (x != this.root) {
+            int child = x;
+            x = parent[x];
+            if (z != NIL) {
+                z = insertAndSplit(x, z, child); // the new half of child comes right after it
+            } else {
+                updateNode(x);
+            }
+        }
+        if (z != NIL) { // x was split - create a new root with x and z as its children
+            int w = newNode(0, 0);
+            setChildren(w, x, z, NIL);
+            this.root = w;
+        }
+        return leaf;
+    }
+
+    // Add z as a child of x right after the child previous (first if previous is NIL) - if x had 3 children, split it
+    // and return the new node that should be added to the parent of x after x. The place is given and not found by
+    // comparing keys, since the events of one timestamp have equal keys, like the insertAndSplit of Tree
+    private int insertAndSplit(int x, int z, int previous) {
+        int l = left[x], m = middle[x], r = right[x];
+        if (r == NIL) {
+            if (previous == NIL) {
+                setChildren(x, z, l, m);
+            } else if (previous == l) {
+                setChildren(x, l, z, m);
+            } else {
+                setChildren(x, l, m, z);
+            }
+            return NIL;
+        }
+        int y = newNode(0, 0);
+        if (previous == NIL) {
+            setChildren(x, z, l, NIL);
+            setChildren(y, m, r, NIL);
+        } else if (previous == l) {
+            setChildren(x, l, z, NIL);
+            setChildren(y, m, r, NIL);
+        } else if (previous == m) {
+            setChildren(x, l, m, NIL);
+            setChildren(y, z, r, NIL);
+        } else {
+            setChildren(x, l, m, NIL);
+            setChildren(y, r, z, NIL);
+        }
+        return y;
+    }
+
+    // Return the leaf with key k, or NIL if there is no such leaf
+    public int search(long k) {
+        int x = this.root;
+        while (left[x] != NIL) {
+            if (k <= key[left[x]]) {
+                x = left[x];
+            } else if (k <= key[middle[x]]) {
+                x = middle[x];
+            } else {
+                x = right[x];
+            }
+        }
+        if (key[x] == k && size[x] == 1) { // sentinels have size 0
+            return x;
+        }
+        return NIL;
+    }
+
+    public void delete(int x) {
+        int y = parent[x];
+        if (x == left[y]) {
+            setChildren(y, middle[y], right[y], NIL);
+        } else if (x == middle[y]) {
+            setChildren(y, left[y], right[y], NIL);
+        } else {
+            setChildren(y, left[y], middle[y], NIL);
+        }
+        freeNode(x);
+        while (y != NIL) {
+            if (middle[y] != NIL) {
+                updateNode(y);
+                y = parent[y];
+            } else if (y != this.root) {
+                y = borrowOrMerge(y);
+            } else { // the root has one child - the child becomes the root
+                this.root = left[y];
+                parent[this.root] = NIL;
+                freeNode(y);
+                return;
+            }
+        }
+    }
+
+    // y has one child - borrow a child from its sibling, or give the child to the sibling and remove y
+    private int borrowOrMerge(int y) {
+        int z = parent[y];
+        if (y == left[z]) {
+            int x = middle[z];
+            if (right[x] != NIL) { // x has 3 children
+                setChildren(y, left[y], left[x], NIL);
+                setChildren(x, middle[x], right[x], NIL);
+            } else {
+                setChildren(x, left[y], left[x], middle[x]);
+                freeNode(y);
+                setChildren(z, x, right[z], NIL);
+            }
+            return z;
+        }
+        if (y == middle[z]) {
+            int x = left[z];
+            if (right[x] != NIL) { // x has 3 children
+                setChildren(y, right[x], left[y], NIL);
+                setChildren(x, left[x], middle[x], NIL);
+            } else {
+                setChildren(x, left[x], middle[x], left[y]);
+                freeNode(y);
+                setChildren(z, x, right[z], NIL);
+            }
+            return z;
+        }
+        int x = middle[z];
+        if (right[x] != NIL) { // x has 3 children
+            setChildren(y, right[x], left[y], NIL);
+            setChildren(x, left[x], middle[x], NIL);
+        } else {
+            setChildren(x, left[x], middle[x], left[y]);
+            freeNode(y);
+            setChildren(z, left[z], x, NIL);
+        }
+        return z;
+    }
+
+    // Returns the sum of the values of the leaves with key <= k - O(log n)
+    public double prefixSum(long k) {
+        double result = 0;
+        int x = this.root;
+        while (left[x] != NIL) {
+            if (k < key[left[x]]) {
+                x = left[x];
+            } else if (middle[x] != NIL && k < key[middle[x]]) {
+                result += sum[left[x]];
+                x = middle[x];
+            } else if (right[x] != NIL) {
+                result += sum[left[x]] + sum[middle[x]];
+                x = right[x];
+            } else {
+                return result + sum[x];
+            }
+        }
+        if (key[x] <= k) {
+            result += sum[x];
+        }
+        return result;
+    }
+
+    // The lowest and the highest prefixSum(k) over the keys k of the leaves in [from, to], like Tree.prefixExtremes - O(log n)
+    public void prefixExtremes(long from, long to, double[] result) {
+        result[0] = Double.POSITIVE_INFINITY;
+        result[1] = Double.NEGATIVE_INFINITY;
+        if (from <= to) {
+            prefixExtremes(root, false, 0, 0, from, to, result);
+        }
+        if (result[0] > result[1]) {
+            result[0] = Double.NaN;
+            result[1] = Double.NaN;
+        }
+    }
+
+    // The keys of the subtree of x are bigger than low (if hasLow) and not bigger than key[x],
+    // and before is the sum of the leaves before the subtree
+    private void prefixExtremes(int x, boolean hasLow, long low, double before, long from, long to, double[] result) {
+        if (key[x] < from || (hasLow && low >= to)) {
+            return; // no key of the subtree is in [from, to]
+        }
+        if (key[x] <= to && (left[x] == NIL || (hasLow && low >= from))) {
+            result[0] = Math.min(result[0], before + minPrefix[x]);  // all the subtree is in [from, to]
+            result[1] = Math.max(result[1], before + maxPrefix[x]);
+            return;
+        }
+        if (left[x] == NIL) {
+            return;
+        }
+        int l = left[x], m = middle[x], r = right[x];
+        prefixExtremes(l, hasLow, low, before, from, to, result);
+        if (m != NIL) {
+            prefixExtremes(m, true, key[l], before + sum[l], from, to, result);
+        }
+        if (r != NIL) {
+            prefixExtremes(r, true, key[m], before + sum[l] + sum[m], from, to, result);
+        }
+    }
+
+    public int rank(int x) {  // returns the position of the key of x in the linear order of the leaves
+        int rank = 1;
+        int y = parent[x];
+        while (y != NIL) {
+            if (x == middle[y]) {
+                rank += size[left[y]];
+            } else if (x == right[y]) {
+                rank += size[left[y]] + size[middle[y]];
+            }
+            x = y;
+            y = parent[y];
+        }
+        return rank;
+    }
+
+    public int successor(int x) {   // the leaf with the smallest key among those bigger than the key of x, or NIL
+        int z = parent[x];
+        while (x == right[z] || (right[z] == NIL && x == middle[z])) {
+            x = z;
+            z = parent[z];
+        }
+        int y = (x == left[z]) ? middle[z] : right[z];
+        while (left[y] != NIL) {
+            y = left[y];
+        }
+        if (key[y] == LONG_SENTINEL_MAX && size[y] == 0) {
+            return NIL;
+        }
+        return y;
+    }
+
+    public int minimum() {  // the leaf with the smallest key, or NIL if the tree is empty
+        int x = this.root;
+        while (left[x] != NIL) {
+            x = left[x];
+        }
+        return successor(x);
+    }
+
+    public int maximum() {  // the leaf with the biggest key, or NIL if the tree is empty - the sentinels have size 0
+        if (size[root] == 0) {
+            return NIL;
+        }
+        int x = this.root;
+        while (left[x] != NIL) {
+            if (right[x] != NIL && size[right[x]] > 0) {
+                x = right[x];
+            } else if (size[middle[x]] > 0) {
+                x = middle[x];
+            } else {
+                x = left[x];
+            }
+        }
+        return x;
+    }
+
+    public long getKey(int x) {
+        return key[x];
+    }
+
+    public float getValue(int x) {
+        return value[x];
+    }
+
+    // StockHistory - the keys are timestamps and the values are price differences
+
+    @Override
+    public void add(long timestamp, float priceDifference) {
+        insert(timestamp, priceDifference);
+    }
+
+    @Override
+    public boolean contains(long timestamp) {
+        return search(timestamp) != NIL;
+    }
+
+    @Override
+    public float remove(long timestamp) {
+        int x = search(timestamp);
+        if (x == NIL) {
+            throw new IllegalArgumentException();
+        }
+        float priceDifference = value[x];
+        delete(x);
+        return priceDifference;
+    }
+
+    @Override
+    public long firstTimestamp() {
+        int x = minimum();
+        if (x == NIL) {
+            throw new IllegalArgumentException();
+        }
+        return key[x];
+    }
+
+    @Override
+    public long lastTimestamp() {
+        int x = maximum();
+        if (x == NIL) {
+            throw new IllegalArgumentException();
+        }
+        return key[x];
+    }
+
+    @Override
+    public double priceAt(long timestamp) {
+        return prefixSum(timestamp);
+    }
+
+    @Override
+    public void priceExtremes(long from, long to, double[] result) {
+        prefixExtremes(from, to, result);
+    }
+
+    @Override
+    public int size() {
+        return size[root];
+    }
+
+    @Override
+    public void copyTo(long[] timestamps, float[] priceDifferences) {
+        int i = 0;
+        for (int x = minimum(); x != NIL; x = successor(x)) {
+            timestamps[i] = key[x];
+            priceDifferences[i] = value[x];
+            i++;
+        }
+    }
+
+    @Override
+    public boolean compact(long cutoff, int maxEvents) {
+        int first = minimum();
+        if (first == NIL) {
+            return false;
+        }
+        int last = first;   // the last event to fold
+        int beforeLast = NIL;
+        double checkpointSum = value[first];
+        int folded = 1;
+        int x = successor(first);
+        for (; x != NIL && key[x] < cutoff && folded <= maxEvents; x = successor(x)) {
+            beforeLast = last;
+            last = x;
+            checkpointSum += value[x];
+            folded++;
+        }
+        boolean more = x != NIL && key[x] < cutoff; // maxEvents stopped the fold
+        if ((float) checkpointSum == 0) { // a checkpoint of 0 is not an event
+            if (folded > 2) {
+                checkpointSum -= value[last];
+                last = beforeLast;
+                folded--;
+            } else if (more) {
+                last = x;
+                checkpointSum += value[x];
+                folded++;
+            } else {
+                return false;
+            }
+        }
+        if (folded < 2) {
+            return more;
+        }
+        checkpoint = key[last];
+        for (int i = 0; i < folded; i++) {
+            delete(minimum());
+        }
+        insert(checkpoint, (float) checkpointSum);
+        return more;
+    }
+
+    @Override
+    public long checkpointTimestamp() {
+        return checkpoint;
+    }
+}
@@ -0,0 +1,696 @@
+import java.util.Arrays;
+import java.util.List;
+
+// B+ tree with a configurable fanout. The keys of a page are kept together in one array, so a search reads a
+// few contiguous arrays on each level instead of a Node object for every key, and the tree has about
+// log_(fanout/2..fanout) n levels instead of log_2..log_3 n.
+// The values are kept in the leaves, and every leaf is linked to the next and the previous leaf.
+// Every inner page keeps the number of keys under each of its children, for countLess and select in O(log n).
+public class BPlusTree<K extends Comparable<K>, V> implements SortedIndex<K, V> {
+    public static final int DEFAULT_FANOUT = 32;
+    public static final int MIN_FANOUT = 4;
+
+    private final int fanout;   // the maximum number of keys in a leaf and of children of an inner page
+    private final int minimum;  // the minimum number of keys in a leaf and of children of an inner page, except the root
+    private Page root;
+    private int height;         // the number of inner levels - 0 if the root is a leaf
+    private int size;
+    private final TreeStats stats = new TreeStats();
+
+    // the inner pages from the root to the leaf of the last insert or delete, and the child taken in each of them
+    private Inner[] path = new Inner[8];
+    private int[] slots = new int[8];
+
+    // pages that merges took out of the tree - splits take them before they create new ones,
+    // so a delete and an insert that follow each other do not allocate
+    public static final int FREE_PAGES = 16;
+    private final Leaf[] freeLeaves = new Leaf[FREE_PAGES];
+    private final Inner[] freeInners = new Inner[FREE_PAGES];
+    private int freeLeavesCount;
+    private int freeInnersCount;
+
+    private abstract static class Page {
+        int count;  // leaf - the number of keys, inner page - the number of children
+    }
+
+    private static final class Leaf extends Page {
+        final Object[] keys;
+        final Object[] values;
+        Leaf next;
+        Leaf previous;
+
+        Leaf(int capacity) {
+            this.keys = new Object[capacity];
+            this.values = new Object[capacity];
+        }
+    }
+
+    private static final class Inner extends Page {
+        final Object[] keys;    // keys[i] separates children[i] and children[i + 1] - it is the smallest key under children[i + 1]
+        final Page[] children;
+        final int[] sizes;      // the number of keys under every child
+
+        Inner(int capacity) {
+            this.keys = new Object[capacity];
+            this.children = new Page[capacity];
+            this.sizes = new int[capacity];
+        }
+    }
+
+    public BPlusTree() {
+        this(DEFAULT_FANOUT);
+    }
+
+    public BPlusTree(int fanout) {
+        if (fanout < MIN_FANOUT) {
+            throw new IllegalArgumentException();
+        }
+        this.fanout = fanout;
+        this.minimum = fanout / 2;
+        this.root = new Leaf(fanout + 1);   // a page may hold one more than fanout until it is split
+        this.height = 0;
+        this.size = 0;
+    }
+
+    // Build the tree bottom up from keys sorted in increasing order - O(n).
+    // The keys are spread evenly over the fewest leaves that hold them, and every level above the same way
+    public BPlusTree(int fanout, List<K> sortedKeys, List<V> values) {
+        this(fanout);
+        int n = sortedKeys.size();
+        if (values.size() != n) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 1; i < n; i++) {
+            if (sortedKeys.get(i).compareTo(sortedKeys.get(i - 1)) <= 0) { // sorted and different
+                throw new IllegalArgumentException();
+            }
+        }
+        if (n == 0) {
+            return;
+        }
+        int leaves = (n + fanout - 1) / fanout;
+        Page[] level = new Page[leaves];
+        int[] levelSizes = new int[leaves];
+        Object[] firstKeys = new Object[leaves]; // the smallest key under every page of the level
+        Leaf previous = null;
+        int k = 0;
+        for (int l = 0; l < leaves; l++) {
+            Leaf leaf = new Leaf(fanout + 1);
+            leaf.count = n / leaves + (l < n % leaves ? 1 : 0);
+            for (int j = 0; j < leaf.count; j++) {
+                leaf.keys[j] = sortedKeys.get(k);
+                leaf.values[j] = values.get(k);
+                k++;
+            }
+            leaf.previous = previous;
+            if (previous != null) {
+                previous.next = leaf;
+            }
+            previous = leaf;
+            level[l] = leaf;
+            levelSizes[l] = leaf.count;
+            firstKeys[l] = leaf.keys[0];
+        }
+        while (level.length > 1) {
+            int parentsCount = (level.length + fanout - 1) / fanout;
+            Page[] parents = new Page[parentsCount];
+            int[] parentSizes = new int[parentsCount];
+            Object[] parentFirstKeys = new Object[parentsCount];
+            int c = 0;
+            for (int p = 0; p < parentsCount; p++) {
+                Inner inner = new Inner(fanout + 1);
+                inner.count = level.length / parentsCount + (p < level.length % parentsCount ? 1 : 0);
+                parentFirstKeys[p] = firstKeys[c];
+                for (int j = 0; j < inner.count; j++) {
+                    inner.children[j] = level[c];
+                    inner.sizes[j] = levelSizes[c];
+                    if (j > 0) {
+                        inner.keys[j - 1] = firstKeys[c];
+                    }
+                    parentSizes[p] += levelSizes[c];
+                    c++;
+                }
+                parents[p] = inner;
+            }
+            level = parents;
+            levelSizes = parentSizes;
+            firstKeys = parentFirstKeys;
+            height++;
+        }
+        this.root = level[0];
+        this.size = n;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<K>> int compare(K key, Object other) {
+        return key.compareTo((K) other);
+    }
+
+    // The child of inner to look for key in - the number of separators <= key
+    private static <K extends Comparable<K>> int upperChild(Inner inner, K key) {
+        int low = 0, high = inner.count - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(key, inner.keys[mid]) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // The child of inner that holds the first key >= key, if any - the number of separators < key
+    private static <K extends Comparable<K>> int lowerChild(Inner inner, K key) {
+        int low = 0, high = inner.count - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(key, inner.keys[mid]) <= 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // The number of keys of leaf < key
+    private static <K extends Comparable<K>> int lowerBound(Leaf leaf, K key) {
+        int low = 0, high = leaf.count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(key, leaf.keys[mid]) <= 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // The number of keys of leaf <= key
+    private static <K extends Comparable<K>> int upperBound(Leaf leaf, K key) {
+        int low = 0, high = leaf.count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(key, leaf.keys[mid]) < 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    // Go down to the leaf of key and keep the way in path and slots
+    private Leaf descend(K key) {
+        if (path.length < height) {
+            path = Arrays.copyOf(path, 2 * height);
+            slots = Arrays.copyOf(slots, 2 * height);
+        }
+        Page page = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) page;
+            int i = upperChild(inner, key);
+            path[d] = inner;
+            slots[d] = i;
+            page = inner.children[i];
+        }
+        return (Leaf) page;
+    }
+
+    private static int pageSize(Page page) {
+        if (page instanceof Leaf) {
+            return page.count;
+        }
+        Inner inner = (Inner) page;
+        int sum = 0;
+        for (int i = 0; i < inner.count; i++) {
+            sum += inner.sizes[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        Leaf leaf = descend(key);
+        int i = lowerBound(leaf, key);
+        if (i < leaf.count && compare(key, leaf.keys[i]) == 0) {
+            throw new IllegalArgumentException();
+        }
+        stats.inserts++;
+        stats.nodesVisited += height + 1;
+        System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+        System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.count - i);
+        leaf.keys[i] = key;
+        leaf.values[i] = value;
+        leaf.count++;
+        size++;
+        for (int d = 0; d < height; d++) {
+            path[d].sizes[slots[d]]++;
+        }
+        if (leaf.count <= fanout) {
+            return;
+        }
+        // split the full pages on the way up - right is the new page and separator the smallest key under it
+        Page right = splitLeaf(leaf);
+        Object separator = ((Leaf) right).keys[0];
+        for (int d = height - 1; d >= 0; d--) {
+            Inner parent = path[d];
+            insertChild(parent, slots[d], separator, right);
+            if (parent.count <= fanout) {
+                return;
+            }
+            Inner newRight = splitInner(parent);
+            separator = parent.keys[parent.count - 1]; // splitInner leaves the middle separator after the last child
+            parent.keys[parent.count - 1] = null;
+            right = newRight;
+        }
+        // the root was split - a new root with the two halves as its children
+        Inner newRoot = newInner();
+        newRoot.children[0] = root;
+        newRoot.children[1] = right;
+        newRoot.keys[0] = separator;
+        newRoot.sizes[1] = pageSize(right);
+        newRoot.sizes[0] = size - newRoot.sizes[1];
+        newRoot.count = 2;
+        root = newRoot;
+        height++;
+    }
+
+    // Move the upper half of the overfull leaf to a new leaf after it
+    private Leaf splitLeaf(Leaf leaf) {
+        stats.splits++;
+        Leaf right = newLeaf();
+        int leftCount = leaf.count / 2;
+        right.count = leaf.count - leftCount;
+        System.arraycopy(leaf.keys, leftCount, right.keys, 0, right.count);
+        System.arraycopy(leaf.values, leftCount, right.values, 0, right.count);
+        Arrays.fill(leaf.keys, leftCount, leaf.count, null);
+        Arrays.fill(leaf.values, leftCount, leaf.count, null);
+        leaf.count = leftCount;
+        right.next = leaf.next;
+        right.previous = leaf;
+        if (leaf.next != null) {
+            leaf.next.previous = right;
+        }
+        leaf.next = right;
+        return right;
+    }
+
+    // Move the upper half of the children of the overfull inner page to a new page after it.
+    // The separator between the halves is left in inner.keys[inner.count - 1] for the parent
+    private Inner splitInner(Inner inner) {
+        stats.splits++;
+        Inner right = newInner();
+        int leftCount = inner.count / 2;
+        right.count = inner.count - leftCount;
+        System.arraycopy(inner.children, leftCount, right.children, 0, right.count);
+        System.arraycopy(inner.sizes, leftCount, right.sizes, 0, right.count);
+        System.arraycopy(inner.keys, leftCount, right.keys, 0, right.count - 1);
+        Arrays.fill(inner.children, leftCount, inner.count, null);
+        Arrays.fill(inner.sizes, leftCount, inner.count, 0);
+        Arrays.fill(inner.keys, leftCount, inner.count - 1, null);
+        inner.count = leftCount;
+        return right;
+    }
+
+    private Leaf newLeaf() {
+        return (freeLeavesCount > 0) ? freeLeaves[--freeLeavesCount] : new Leaf(fanout + 1);
+    }
+
+    private Inner newInner() {
+        return (freeInnersCount > 0) ? freeInners[--freeInnersCount] : new Inner(fanout + 1);
+    }
+
+    // Keep a page that left the tree for newLeaf and newInner, or leave it to the garbage collector if enough are kept
+    private void freePage(Page page) {
+        if (page instanceof Leaf) {
+            Leaf leaf = (Leaf) page;
+            Arrays.fill(leaf.keys, 0, leaf.count, null);
+            Arrays.fill(leaf.values, 0, leaf.count, null);
+            leaf.next = null;
+            leaf.previous = null;
+            if (freeLeavesCount < FREE_PAGES) {
+                freeLeaves[freeLeavesCount++] = leaf;
+            }
+        } else {
+            Inner inner = (Inner) page;
+            Arrays.fill(inner.keys, 0, inner.count, null);
+            Arrays.fill(inner.children, 0, inner.count, null);
+            Arrays.fill(inner.sizes, 0, inner.count, 0);
+            if (freeInnersCount < FREE_PAGES) {
+                freeInners[freeInnersCount++] = inner;
+            }
+        }
+        page.count = 0;
+    }
+
+    // children[s] of parent was split - add right after it, with separator between them
+    private void insertChild(Inner parent, int s, Object separator, Page right) {
+        int rightSize = pageSize(right);
+        parent.sizes[s] -= rightSize;
+        System.arraycopy(parent.keys, s, parent.keys, s + 1, parent.count - 1 - s);
+        System.arraycopy(parent.children, s + 1, parent.children, s + 2, parent.count - 1 - s);
+        System.arraycopy(parent.sizes, s + 1, parent.sizes, s + 2, parent.count - 1 - s);
+        parent.keys[s] = separator;
+        parent.children[s + 1] = right;
+        parent.sizes[s + 1] = rightSize;
+        parent.count++;
+    }
+
+    @Override
+    public V search(K key) {
+        Page page = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) page;
+            page = inner.children[upperChild(inner, key)];
+        }
+        Leaf leaf = (Leaf) page;
+        int i = lowerBound(leaf, key);
+        if (i < leaf.count && compare(key, leaf.keys[i]) == 0) {
+            return value(leaf, i);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(Leaf leaf, int i) {
+        return (V) leaf.values[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private K key(Object[] keys, int i) {
+        return (K) keys[i];
+    }
+
+    @Override
+    public V delete(K key) {
+        Leaf leaf = descend(key);
+        int i = lowerBound(leaf, key);
+        if (i == leaf.count || compare(key, leaf.keys[i]) != 0) {
+            return null;
+        }
+        stats.deletes++;
+        stats.nodesVisited += height + 1;
+        V value = value(leaf, i);
+        Object removed = leaf.keys[i];
+        System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - 1 - i);
+        System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.count - 1 - i);
+        leaf.count--;
+        leaf.keys[leaf.count] = null;
+        leaf.values[leaf.count] = null;
+        size--;
+        for (int d = 0; d < height; d++) {
+            path[d].sizes[slots[d]]--;
+            // a separator is the smallest key under the child after it - if that was the removed key,
+            // the next key takes its place, so the tree keeps no key that was removed from it
+            if (slots[d] > 0 && path[d].keys[slots[d] - 1] == removed) {
+                path[d].keys[slots[d] - 1] = leaf.keys[0];
+            }
+        }
+        // fix the pages that became too small on the way up - a borrow ends it, a merge may make the parent too small
+        Page page = leaf;
+        for (int d = height - 1; d >= 0 && page.count < minimum; d--) {
+            Inner parent = path[d];
+            int s = slots[d];
+            if (s > 0 && parent.children[s - 1].count > minimum) {
+                borrowFromLeft(parent, s);
+                break;
+            }
+            if (s < parent.count - 1 && parent.children[s + 1].count > minimum) {
+                borrowFromRight(parent, s);
+                break;
+            }
+            merge(parent, (s > 0) ? s - 1 : s);
+            page = parent;
+        }
+        while (height > 0 && root.count == 1) { // the root has one child - the child becomes the root
+            Page oldRoot = root;
+            root = ((Inner) root).children[0];
+            height--;
+            freePage(oldRoot);
+        }
+        return value;
+    }
+
+    // Move the last key (or child) of children[s - 1] of parent to the start of children[s]
+    private void borrowFromLeft(Inner parent, int s) {
+        stats.borrows++;
+        Page page = parent.children[s];
+        int moved;
+        if (page instanceof Leaf) {
+            Leaf node = (Leaf) page, left = (Leaf) parent.children[s - 1];
+            System.arraycopy(node.keys, 0, node.keys, 1, node.count);
+            System.arraycopy(node.values, 0, node.values, 1, node.count);
+            node.keys[0] = left.keys[left.count - 1];
+            node.values[0] = left.values[left.count - 1];
+            node.count++;
+            left.count--;
+            left.keys[left.count] = null;
+            left.values[left.count] = null;
+            parent.keys[s - 1] = node.keys[0];
+            moved = 1;
+        } else {
+            Inner node = (Inner) page, left = (Inner) parent.children[s - 1];
+            System.arraycopy(node.children, 0, node.children, 1, node.count);
+            System.arraycopy(node.sizes, 0, node.sizes, 1, node.count);
+            System.arraycopy(node.keys, 0, node.keys, 1, node.count - 1);
+            node.children[0] = left.children[left.count - 1];
+            node.sizes[0] = left.sizes[left.count - 1];
+            node.keys[0] = parent.keys[s - 1];
+            parent.keys[s - 1] = left.keys[left.count - 2];
+            node.count++;
+            left.count--;
+            left.children[left.count] = null;
+            left.sizes[left.count] = 0;
+            left.keys[left.count - 1] = null;
+            moved = node.sizes[0];
+        }
+        parent.sizes[s - 1] -= moved;
+        parent.sizes[s] += moved;
+    }
+
+    // Move the first key (or child) of children[s + 1] of parent to the end of children[s]
+    private void borrowFromRight(Inner parent, int s) {
+        stats.borrows++;
+        Page page = parent.children[s];
+        int moved;
+        if (page instanceof Leaf) {
+            Leaf node = (Leaf) page, right = (Leaf) parent.children[s + 1];
+            node.keys[node.count] = right.keys[0];
+            node.values[node.count] = right.values[0];
+            node.count++;
+            right.count--;
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count);
+            System.arraycopy(right.values, 1, right.values, 0, right.count);
+            right.keys[right.count] = null;
+            right.values[right.count] = null;
+            parent.keys[s] = right.keys[0];
+            moved = 1;
+        } else {
+            Inner node = (Inner) page, right = (Inner) parent.children[s + 1];
+            node.children[node.count] = right.children[0];
+            node.sizes[node.count] = right.sizes[0];
+            node.keys[node.count - 1] = parent.keys[s];
+            parent.keys[s] = right.keys[0];
+            moved = right.sizes[0];
+            node.count++;
+            right.count--;
+            System.arraycopy(right.children, 1, right.children, 0, right.count);
+            System.arraycopy(right.sizes, 1, right.sizes, 0, right.count);
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            right.children[right.count] = null;
+            right.sizes[right.count] = 0;
+            right.keys[right.count - 1] = null;
+        }
+        parent.sizes[s] += moved;
+        parent.sizes[s + 1] -= moved;
+    }
+
+    // Move everything in children[l + 1] of parent to the end of children[l] and remove children[l + 1]
+    private void merge(Inner parent, int l) {
+        stats.merges++;
+        Page leftPage = parent.children[l];
+        if (leftPage instanceof Leaf) {
+            Leaf left = (Leaf) leftPage, right = (Leaf) parent.children[l + 1];
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            System.arraycopy(right.values, 0, left.values, left.count, right.count);
+            left.count += right.count;
+            left.next = right.next;
+            if (right.next != null) {
+                right.next.previous = left;
+            }
+            freePage(right);
+        } else {
+            Inner left = (Inner) leftPage, right = (Inner) parent.children[l + 1];
+            left.keys[left.count - 1] = parent.keys[l];
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count - 1);
+            System.arraycopy(right.children, 0, left.children, left.count, right.count);
+            System.arraycopy(right.sizes, 0, left.sizes, left.count, right.count);
+            left.count += right.count;
+            freePage(right);
+        }
+        parent.sizes[l] += parent.sizes[l + 1];
+        System.arraycopy(parent.keys, l + 1, parent.keys, l, parent.count - 2 - l);
+        System.arraycopy(parent.children, l + 2, parent.children, l + 1, parent.count - 2 - l);
+        System.arraycopy(parent.sizes, l + 2, parent.sizes, l + 1, parent.count - 2 - l);
+        parent.count--;
+        parent.keys[parent.count - 1] = null;
+        parent.children[parent.count] = null;
+        parent.sizes[parent.count] = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Sum the sizes of the children left of the way down, like Tree.countLess
+    @Override
+    public int countLess(K key) {
+        int count = 0;
+        Page page = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) page;
+            int i = lowerChild(inner, key);
+            for (int j = 0; j < i; j++) {
+                count += inner.sizes[j];
+            }
+            page = inner.children[i];
+        }
+        return count + lowerBound((Leaf) page, key);
+    }
+
+    @Override
+    public int countLessOrEqual(K key) {
+        int count = 0;
+        Page page = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) page;
+            int i = upperChild(inner, key);
+            for (int j = 0; j < i; j++) {
+                count += inner.sizes[j];
+            }
+            page = inner.children[i];
+        }
+        return count + upperBound((Leaf) page, key);
+    }
+
+    @Override
+    public Cursor<K, V> select(int k) {
+        if (k < 1 || k > size) {
+            return new LeafCursor(null, 0);
+        }
+        Page page = root;
+        for (int d = 0; d < height; d++) {
+            Inner inner = (Inner) page;
+            int i = 0;
+            while (k > inner.sizes[i]) {
+                k -= inner.sizes[i];
+                i++;
+            }
+            page = inner.children[i];
+        }
+        return new LeafCursor((Leaf) page, k - 1);
+    }
+
+    @Override
+    public TreeStats stats() {
+        return stats;
+    }
+
+    // Every page but the root holds minimum..fanout keys or children and the root at least 2 children, the sizes of
+    // the children are right, the keys are in increasing order between the separators, and the links of the leaves
+    // follow the order of the leaves
+    @Override
+    public void checkInvariants() {
+        Leaf[] last = new Leaf[1];  // the leaf before the next one checked
+        if (checkPage(root, height, null, null, last) != size) {
+            throw new IllegalStateException("size " + size + " is not the number of keys");
+        }
+        if (last[0] != null && last[0].next != null) {
+            throw new IllegalStateException("the last leaf has a next leaf");
+        }
+    }
+
+    // Check the subtree of page, whose keys must be >= low and < high (null - no bound) - returns its number of keys
+    private int checkPage(Page page, int level, K low, K high, Leaf[] last) {
+        int minimumCount = (page != root) ? minimum : (level > 0) ? 2 : 0;
+        if (page.count < minimumCount || page.count > fanout) {
+            throw new IllegalStateException("a page with " + page.count + " keys or children");
+        }
+        if (level == 0) {
+            Leaf leaf = (Leaf) page;
+            for (int i = 0; i < leaf.count; i++) {
+                K key = key(leaf.keys, i);
+                if ((low != null && key.compareTo(low) < 0) || (high != null && key.compareTo(high) >= 0)
+                        || (i > 0 && compare(key, leaf.keys[i - 1]) <= 0)) {
+                    throw new IllegalStateException("key " + key + " out of order");
+                }
+            }
+            if (leaf.previous != last[0] || (last[0] != null && last[0].next != leaf)) {
+                throw new IllegalStateException("the leaves are not linked in order");
+            }
+            last[0] = leaf;
+            return leaf.count;
+        }
+        Inner inner = (Inner) page;
+        int keys = 0;
+        for (int i = 0; i < inner.count; i++) {
+            K childLow = (i == 0) ? low : key(inner.keys, i - 1);
+            K childHigh = (i == inner.count - 1) ? high : key(inner.keys, i);
+            int childKeys = checkPage(inner.children[i], level - 1, childLow, childHigh, last);
+            if (childKeys != inner.sizes[i]) {
+                throw new IllegalStateException("a child of " + childKeys + " keys with size " + inner.sizes[i]);
+            }
+            keys += childKeys;
+        }
+        return keys;
+    }
+
+    // A key in a leaf - moves along the links between the leaves
+    private class LeafCursor implements Cursor<K, V> {
+        private Leaf leaf;  // null - not valid
+        private int index;
+
+        LeafCursor(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+        }
+
+        @Override
+        public boolean valid() {
+            return leaf != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K key() {
+            return (K) leaf.keys[index];
+        }
+
+        @Override
+        public V value() {
+            return BPlusTree.this.value(leaf, index);
+        }
+
+        @Override
+        public void next() {
+            index++;
+            if (index == leaf.count) {
+                leaf = leaf.next;
+                index = 0;
+            }
+        }
+
+        @Override
+        public void previous() {
+            index--;
+            if (index < 0) {
+                leaf = leaf.previous;
+                index = (leaf == null) ? 0 : leaf.count - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+// One candle of a candle chart of a stock - its price during the window [start, end): the price at the start of the
+// window (or when the stock was added, if that was later), the highest and the lowest price in the window and the
+// price at its end. Created by StockManager.getCandles
+public class Candle {
+    public final long start;
+    public final long end;
+    public final float open;
+    public final float high;
+    public final float low;
+    public final float close;
+
+    public Candle(long start, long end, float open, float high, float low, float close) {
+        this.start = start;
+        this.end = end;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ") open=" + open + ", high=" + high + ", low=" + low + ", close=" + close;
+    }
+}
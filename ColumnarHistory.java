@@ -0,0 +1,468 @@
+import java.util.Arrays;
+
+// StockHistory kept in columns - chunks of a long[] of timestamps and a float[] of price differences.
+// The chunks are sorted by timestamp, and so are the events in every chunk, so an event is found by a binary
+// search over the chunks and then inside its chunk. Events usually arrive in increasing timestamp order,
+// so most adds write to the end of the last chunk.
+// A removed event becomes a tombstone - its price difference is set to 0, which no real event has
+// (updateStock refuses a difference of 0 and a stock is added with a positive price).
+// When half of a chunk is tombstones the chunk is compacted.
+// Every chunk keeps the sum of its price differences and the sum of all the chunks before it, so the price
+// at a timestamp is one binary search and a scan of a single chunk.
+// Every chunk also keeps the lowest and the highest price after its events, relative to the sum of the chunks before
+// it, so the extremes of the price over a window scan at most the two chunks at the ends of the window.
+public class ColumnarHistory implements StockHistory {
+    public static final int CHUNK_SIZE = 256;       // the maximum number of events in a chunk
+    private static final int FIRST_CHUNK_SIZE = 4;  // chunks grow up to CHUNK_SIZE, so short histories stay small
+
+    private long[][] timestamps;
+    private float[][] priceDifferences;
+    private int[] counts;   // the number of used slots in every chunk, tombstones included
+    private int[] removed;  // the number of tombstones in every chunk
+    private double[] chunkSums;     // the sum of the price differences in every chunk
+    private double[] sumsBefore;    // the sum of the price differences in all the chunks before every chunk
+    private double[] chunkMinPrefix;    // the lowest and the highest sum of the price differences of every chunk up to
+    private double[] chunkMaxPrefix;    // one of its events - +inf and -inf for a chunk of tombstones
+    private int chunks;     // the number of chunks in use - every chunk in use has at least one used slot
+    private int size;       // the number of events, without tombstones
+    private long checkpoint = Long.MIN_VALUE; // see checkpointTimestamp
+
+    public ColumnarHistory() {
+        this.timestamps = new long[1][];
+        this.priceDifferences = new float[1][];
+        this.counts = new int[1];
+        this.removed = new int[1];
+        this.chunkSums = new double[1];
+        this.sumsBefore = new double[1];
+        this.chunkMinPrefix = new double[1];
+        this.chunkMaxPrefix = new double[1];
+        this.chunks = 0;
+        this.size = 0;
+    }
+
+    // Build the history from events sorted by timestamp (events may share a timestamp, as add allows) - full chunks
+    // are filled one after the other
+    public ColumnarHistory(long[] sortedTimestamps, float[] priceDifferences) {
+        if (sortedTimestamps.length != priceDifferences.length) {
+            throw new IllegalArgumentException();
+        }
+        int chunksCount = Math.max(1, (sortedTimestamps.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        this.timestamps = new long[chunksCount][];
+        this.priceDifferences = new float[chunksCount][];
+        this.counts = new int[chunksCount];
+        this.removed = new int[chunksCount];
+        this.chunkSums = new double[chunksCount];
+        this.sumsBefore = new double[chunksCount];
+        this.chunkMinPrefix = new double[chunksCount];
+        this.chunkMaxPrefix = new double[chunksCount];
+        for (int i = 0; i < sortedTimestamps.length; i++) {
+            if ((i > 0 && sortedTimestamps[i] < sortedTimestamps[i - 1]) || priceDifferences[i] == 0) {
+                throw new IllegalArgumentException();
+            }
+        }
+        for (int c = 0; c * CHUNK_SIZE < sortedTimestamps.length; c++) {
+            int from = c * CHUNK_SIZE;
+            int to = Math.min(from + CHUNK_SIZE, sortedTimestamps.length);
+            this.timestamps[c] = Arrays.copyOfRange(sortedTimestamps, from, to);
+            this.priceDifferences[c] = Arrays.copyOfRange(priceDifferences, from, to);
+            this.counts[c] = to - from;
+            summarize(c);
+            this.chunks++;
+        }
+        this.size = sortedTimestamps.length;
+        refreshSums(0);
+    }
+
+    @Override
+    public void add(long timestamp, float priceDifference) {
+        if (priceDifference == 0) { // 0 marks a tombstone
+            throw new IllegalArgumentException();
+        }
+        if (chunks == 0) {
+            insertChunk(0, FIRST_CHUNK_SIZE);
+        }
+        int c = chunks - 1;
+        if (counts[c] == 0 || timestamp >= timestamps[c][counts[c] - 1]) { // the common case - append after the last event
+            insertAt(c, counts[c], timestamp, priceDifference);
+            return;
+        }
+        c = findChunk(timestamp);
+        int i = lowerBound(c, timestamp);
+        if (i < counts[c] && timestamps[c][i] == timestamp && priceDifferences[c][i] == 0) { // reuse the tombstone
+            priceDifferences[c][i] = priceDifference;
+            removed[c]--;
+            size++;
+            summarize(c);
+            refreshSums(c + 1);
+            return;
+        }
+        insertAt(c, i, timestamp, priceDifference);
+    }
+
+    @Override
+    public boolean contains(long timestamp) {
+        return chunks > 0 && find(findChunk(timestamp), timestamp) >= 0;
+    }
+
+    @Override
+    public float remove(long timestamp) {
+        int c = chunks > 0 ? findChunk(timestamp) : 0;
+        int i = chunks > 0 ? find(c, timestamp) : -1;
+        if (i < 0) {
+            throw new IllegalArgumentException();
+        }
+        float priceDifference = priceDifferences[c][i];
+        priceDifferences[c][i] = 0;
+        removed[c]++;
+        size--;
+        if (2 * removed[c] >= counts[c]) {
+            compactChunk(c);
+        } else {
+            summarize(c);
+        }
+        refreshSums(c);
+        return priceDifference;
+    }
+
+    @Override
+    public long firstTimestamp() {
+        for (int c = 0; c < chunks; c++) {
+            for (int i = 0; i < counts[c]; i++) {
+                if (priceDifferences[c][i] != 0) {
+                    return timestamps[c][i];
+                }
+            }
+        }
+        throw new IllegalArgumentException(); // the history is empty
+    }
+
+    @Override
+    public long lastTimestamp() {
+        for (int c = chunks - 1; c >= 0; c--) {
+            for (int i = counts[c] - 1; i >= 0; i--) {
+                if (priceDifferences[c][i] != 0) {
+                    return timestamps[c][i];
+                }
+            }
+        }
+        throw new IllegalArgumentException(); // the history is empty
+    }
+
+    @Override
+    public double priceAt(long timestamp) {
+        if (chunks == 0 || timestamp < timestamps[0][0]) {
+            return 0;
+        }
+        int c = findChunk(timestamp);
+        double price = sumsBefore[c];
+        for (int i = 0; i < counts[c] && timestamps[c][i] <= timestamp; i++) {
+            price += priceDifferences[c][i]; // tombstones add 0
+        }
+        return price;
+    }
+
+    // The chunks inside the window answer with their extreme prefix sums, and only the chunks at its ends are scanned
+    @Override
+    public void priceExtremes(long from, long to, double[] result) {
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        if (chunks > 0 && from <= to) {
+            int c = findChunk(from);
+            for (int first = lowerBound(c, from); c < chunks && timestamps[c][0] <= to; c++, first = 0) {
+                if (first == 0 && timestamps[c][counts[c] - 1] <= to) { // the whole chunk is in the window
+                    min = Math.min(min, sumsBefore[c] + chunkMinPrefix[c]);
+                    max = Math.max(max, sumsBefore[c] + chunkMaxPrefix[c]);
+                    continue;
+                }
+                double price = sumsBefore[c];
+                for (int i = 0; i < counts[c] && timestamps[c][i] <= to; i++) {
+                    price += priceDifferences[c][i];
+                    if (i >= first && priceDifferences[c][i] != 0) {
+                        min = Math.min(min, price);
+                        max = Math.max(max, price);
+                    }
+                }
+            }
+        }
+        result[0] = (min <= max) ? min : Double.NaN;
+        result[1] = (min <= max) ? max : Double.NaN;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void copyTo(long[] timestamps, float[] priceDifferences) {
+        int j = 0;
+        for (int c = 0; c < chunks; c++) {
+            if (removed[c] == 0) { // the whole chunk at once
+                System.arraycopy(this.timestamps[c], 0, timestamps, j, counts[c]);
+                System.arraycopy(this.priceDifferences[c], 0, priceDifferences, j, counts[c]);
+                j += counts[c];
+                continue;
+            }
+            for (int i = 0; i < counts[c]; i++) {
+                if (this.priceDifferences[c][i] != 0) {
+                    timestamps[j] = this.timestamps[c][i];
+                    priceDifferences[j] = this.priceDifferences[c][i];
+                    j++;
+                }
+            }
+        }
+    }
+
+    // The folded events become tombstones, except the last one, which becomes the checkpoint
+    @Override
+    public boolean compact(long cutoff, int maxEvents) {
+        // find how many events to fold and their sum
+        int folded = 0;
+        double checkpointSum = 0;
+        float lastDifference = 0;
+        float nextDifference = 0;   // the first event older than cutoff that maxEvents kept from the fold, 0 - none
+        for (int c = 0; c < chunks; c++) {
+            for (int i = 0; i < counts[c]; i++) {
+                float priceDifference = priceDifferences[c][i];
+                if (priceDifference == 0) {
+                    continue;
+                }
+                if ((folded > 0 && timestamps[c][i] >= cutoff) || folded > maxEvents) {
+                    if (timestamps[c][i] < cutoff) {
+                        nextDifference = priceDifference;
+                    }
+                    c = chunks; // done
+                    break;
+                }
+                lastDifference = priceDifference;
+                checkpointSum += lastDifference;
+                folded++;
+            }
+        }
+        boolean more = nextDifference != 0; // maxEvents stopped the fold
+        if ((float) checkpointSum == 0) { // a checkpoint of 0 would be a tombstone
+            if (folded > 2) {
+                checkpointSum -= lastDifference;
+                folded--;
+            } else if (more) {
+                checkpointSum += nextDifference;
+                folded++;
+            } else {
+                return false;
+            }
+        }
+        if (folded < 2) {
+            return more;
+        }
+        // turn them into tombstones and the checkpoint
+        int lastChunk = 0;
+        int seen = 0;
+        for (int c = 0; seen < folded; c++) {
+            for (int i = 0; i < counts[c] && seen < folded; i++) {
+                float priceDifference = priceDifferences[c][i];
+                if (priceDifference == 0) {
+                    continue;
+                }
+                seen++;
+                float newDifference = (seen == folded) ? (float) checkpointSum : 0;
+                priceDifferences[c][i] = newDifference;
+                if (newDifference == 0) {
+                    removed[c]++;
+                } else {
+                    checkpoint = timestamps[c][i];
+                }
+            }
+            lastChunk = c;
+        }
+        size -= folded - 1;
+        for (int c = lastChunk; c >= 0; c--) { // from the last, since compactChunk may remove a chunk
+            if (2 * removed[c] >= counts[c]) {
+                compactChunk(c);
+            } else {
+                summarize(c);
+            }
+        }
+        refreshSums(0);
+        return more;
+    }
+
+    @Override
+    public long checkpointTimestamp() {
+        return checkpoint;
+    }
+
+    // The last chunk whose first timestamp is not bigger than timestamp (the first chunk if there is none)
+    private int findChunk(long timestamp) {
+        int low = 0, high = chunks - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (timestamps[mid][0] <= timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    // The first slot in chunk c with a timestamp not smaller than timestamp
+    private int lowerBound(int c, long timestamp) {
+        int low = 0, high = counts[c];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[c][mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // The slot of the event with timestamp in chunk c, or -1 - tombstones are skipped
+    private int find(int c, long timestamp) {
+        for (int i = lowerBound(c, timestamp); i < counts[c] && timestamps[c][i] == timestamp; i++) {
+            if (priceDifferences[c][i] != 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Put the event in slot i of chunk c - grow, compact or split the chunk if it is full
+    private void insertAt(int c, int i, long timestamp, float priceDifference) {
+        if (counts[c] == timestamps[c].length) {
+            if (timestamps[c].length < CHUNK_SIZE) {
+                timestamps[c] = Arrays.copyOf(timestamps[c], Math.min(2 * timestamps[c].length, CHUNK_SIZE));
+                priceDifferences[c] = Arrays.copyOf(priceDifferences[c], timestamps[c].length);
+            } else if (removed[c] > 0) {
+                compactChunk(c); // less than half of the chunk is tombstones, so the chunk stays
+                i = lowerBound(c, timestamp);
+            } else if (i == counts[c] && c == chunks - 1) { // appending to a full last chunk - start a new chunk
+                insertChunk(chunks, CHUNK_SIZE);
+                c = chunks - 1;
+                i = 0;
+            } else {
+                splitChunk(c);
+                if (i > counts[c]) {
+                    i -= counts[c];
+                    c++;
+                }
+            }
+        }
+        System.arraycopy(timestamps[c], i, timestamps[c], i + 1, counts[c] - i);
+        System.arraycopy(priceDifferences[c], i, priceDifferences[c], i + 1, counts[c] - i);
+        timestamps[c][i] = timestamp;
+        priceDifferences[c][i] = priceDifference;
+        counts[c]++;
+        size++;
+        if (i == counts[c] - 1) { // an append - the new prefix sum is the sum of the whole chunk
+            chunkSums[c] += priceDifference;
+            chunkMinPrefix[c] = Math.min(chunkMinPrefix[c], chunkSums[c]);
+            chunkMaxPrefix[c] = Math.max(chunkMaxPrefix[c], chunkSums[c]);
+        } else {
+            summarize(c);
+        }
+        refreshSums(c + 1);
+    }
+
+    // Recompute the sum and the extreme prefix sums of chunk c - tombstones end no prefix
+    private void summarize(int c) {
+        double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < counts[c]; i++) {
+            sum += priceDifferences[c][i];
+            if (priceDifferences[c][i] != 0) {
+                min = Math.min(min, sum);
+                max = Math.max(max, sum);
+            }
+        }
+        chunkSums[c] = sum;
+        chunkMinPrefix[c] = min;
+        chunkMaxPrefix[c] = max;
+    }
+
+    // Recompute sumsBefore of chunk from and the chunks after it - appends change the last chunk, so they recompute nothing
+    private void refreshSums(int from) {
+        for (int c = from; c < chunks; c++) {
+            sumsBefore[c] = (c == 0) ? 0 : sumsBefore[c - 1] + chunkSums[c - 1];
+        }
+    }
+
+    // Add an empty chunk with the given capacity at index c
+    private void insertChunk(int c, int capacity) {
+        if (chunks == timestamps.length) {
+            int newLength = 2 * timestamps.length;
+            timestamps = Arrays.copyOf(timestamps, newLength);
+            priceDifferences = Arrays.copyOf(priceDifferences, newLength);
+            counts = Arrays.copyOf(counts, newLength);
+            removed = Arrays.copyOf(removed, newLength);
+            chunkSums = Arrays.copyOf(chunkSums, newLength);
+            sumsBefore = Arrays.copyOf(sumsBefore, newLength);
+            chunkMinPrefix = Arrays.copyOf(chunkMinPrefix, newLength);
+            chunkMaxPrefix = Arrays.copyOf(chunkMaxPrefix, newLength);
+        }
+        System.arraycopy(timestamps, c, timestamps, c + 1, chunks - c);
+        System.arraycopy(priceDifferences, c, priceDifferences, c + 1, chunks - c);
+        System.arraycopy(counts, c, counts, c + 1, chunks - c);
+        System.arraycopy(removed, c, removed, c + 1, chunks - c);
+        System.arraycopy(chunkSums, c, chunkSums, c + 1, chunks - c);
+        System.arraycopy(sumsBefore, c, sumsBefore, c + 1, chunks - c);
+        System.arraycopy(chunkMinPrefix, c, chunkMinPrefix, c + 1, chunks - c);
+        System.arraycopy(chunkMaxPrefix, c, chunkMaxPrefix, c + 1, chunks - c);
+        timestamps[c] = new long[capacity];
+        priceDifferences[c] = new float[capacity];
+        counts[c] = 0;
+        removed[c] = 0;
+        chunkSums[c] = 0;
+        chunkMinPrefix[c] = Double.POSITIVE_INFINITY;
+        chunkMaxPrefix[c] = Double.NEGATIVE_INFINITY;
+        chunks++;
+        refreshSums(c);
+    }
+
+    private void removeChunk(int c) {
+        System.arraycopy(timestamps, c + 1, timestamps, c, chunks - c - 1);
+        System.arraycopy(priceDifferences, c + 1, priceDifferences, c, chunks - c - 1);
+        System.arraycopy(counts, c + 1, counts, c, chunks - c - 1);
+        System.arraycopy(removed, c + 1, removed, c, chunks - c - 1);
+        System.arraycopy(chunkSums, c + 1, chunkSums, c, chunks - c - 1);
+        System.arraycopy(sumsBefore, c + 1, sumsBefore, c, chunks - c - 1);
+        System.arraycopy(chunkMinPrefix, c + 1, chunkMinPrefix, c, chunks - c - 1);
+        System.arraycopy(chunkMaxPrefix, c + 1, chunkMaxPrefix, c, chunks - c - 1);
+        chunks--;
+        timestamps[chunks] = null;
+        priceDifferences[chunks] = null;
+        refreshSums(c);
+    }
+
+    // Move the second half of the full chunk c to a new chunk after it
+    private void splitChunk(int c) {
+        insertChunk(c + 1, CHUNK_SIZE);
+        int half = counts[c] / 2;
+        int moved = counts[c] - half;
+        System.arraycopy(timestamps[c], half, timestamps[c + 1], 0, moved);
+        System.arraycopy(priceDifferences[c], half, priceDifferences[c + 1], 0, moved);
+        counts[c + 1] = moved;
+        counts[c] = half;
+        summarize(c);
+        summarize(c + 1);
+        refreshSums(c + 1);
+    }
+
+    // Drop the tombstones of chunk c, and the chunk itself if nothing is left in it
+    private void compactChunk(int c) {
+        int j = 0;
+        for (int i = 0; i < counts[c]; i++) {
+            if (priceDifferences[c][i] != 0) {
+                timestamps[c][j] = timestamps[c][i];
+                priceDifferences[c][j] = priceDifferences[c][i];
+                j++;
+            }
+        }
+        counts[c] = j;
+        removed[c] = 0;
+        summarize(c);
+        if (j == 0) {
+            removeChunk(c);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// Check of the history retention (StockManager.compactHistories) on every history backend: the checkpoint of the
+// folded events keeps the price, and removeStockTimestamp refuses to remove it, even after an event older than the
+// checkpoint made it no longer the first event of the history.
+// Exits with status 1 if a check failed
+//
+// Run: java CompactionCheck
+public class CompactionCheck {
+    public static void main(String[] args) {
+        boolean failed = false;
+        for (HistoryBackend backend : HistoryBackend.values()) {
+            try {
+                check(backend);
+                System.out.println(backend + " ok");
+            } catch (RuntimeException e) {
+                System.out.println(backend + " FAILED: " + e.getMessage());
+                failed = true;
+            }
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static void check(HistoryBackend backend) {
+        StockManager manager = new StockManager(backend);
+        manager.initStocks();
+        manager.addStock("A", 100, 10f);
+        manager.updateStock("A", 200, 1f);
+        manager.updateStock("A", 400, 1f);
+        manager.compactHistories(300, 100); // the events at 100 and 200 become the checkpoint 11 at 200
+        checkPrice(manager, 12f, "after the compaction");
+
+        manager.updateStock("A", 50, 2f);   // a late event - the checkpoint is not the first event any more
+        checkPrice(manager, 14f, "after the late event");
+        checkRefused(manager, 200, "the checkpoint");
+        checkRefused(manager, 100, "a folded event");
+        checkPrice(manager, 14f, "after the refused removals");
+
+        manager.removeStockTimestamp("A", 400);
+        checkPrice(manager, 13f, "after removing an event after the checkpoint");
+        checkRefused(manager, 50, "the first event");
+        checkPrice(manager, 13f, "at the end");
+    }
+
+    private static void checkRefused(StockManager manager, long timestamp, String what) {
+        try {
+            manager.removeStockTimestamp("A", timestamp);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new IllegalStateException("removeStockTimestamp of " + what + " at " + timestamp + " was accepted");
+    }
+
+    private static void checkPrice(StockManager manager, float expected, String when) {
+        float price = manager.getStockPrice("A");
+        if (price != expected) {
+            throw new IllegalStateException("the price " + when + " is " + price + " instead of " + expected);
+        }
+    }
+}
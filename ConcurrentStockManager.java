@@ -0,0 +1,411 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Thread safe StockManager - many threads may query at the same time while a single feed thread updates.
+// The queries of StockManager only read the trees, so they share the read lock,
+// and every function that changes the trees takes the write lock.
+public class ConcurrentStockManager extends StockManager {
+    private final ReentrantReadWriteLock lock;
+
+    public ConcurrentStockManager() {
+        this(DEFAULT_HISTORY_BACKEND);
+    }
+
+    public ConcurrentStockManager(HistoryBackend historyBackend) {
+        super(historyBackend);
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    public ConcurrentStockManager(HistoryBackend historyBackend, IndexBackend priceIndexBackend, IndexBackend stockIdIndexBackend) {
+        super(historyBackend, priceIndexBackend, stockIdIndexBackend);
+        this.lock = new ReentrantReadWriteLock();
+    }
+
+    @Override
+    public void initStocks() {
+        lock.writeLock().lock();
+        try {
+            super.initStocks();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setJournal(Journal journal) {
+        lock.writeLock().lock();
+        try {
+            super.setJournal(journal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadStocks(String[] stockIds, long[][] timestamps, float[][] prices) {
+        lock.writeLock().lock();
+        try {
+            super.loadStocks(stockIds, timestamps, prices);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void loadStocks(String[] stockIds, long[][] timestamps, float[][] prices, float[] currentPrices) {
+        lock.writeLock().lock();
+        try {
+            super.loadStocks(stockIds, timestamps, prices, currentPrices);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // the snapshot is written under the read lock, so queries go on while it is written
+    @Override
+    public void writeSnapshot(Path path) throws IOException {
+        lock.readLock().lock();
+        try {
+            super.writeSnapshot(path);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void readSnapshot(Path path) throws IOException {
+        lock.writeLock().lock();
+        try {
+            super.readSnapshot(path);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void addStock(String stockId, long timestamp, Float price) {
+        lock.writeLock().lock();
+        try {
+            super.addStock(stockId, timestamp, price);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeStock(String stockId) {
+        lock.writeLock().lock();
+        try {
+            super.removeStock(stockId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setLazyRemoval(boolean lazy) {
+        lock.writeLock().lock();
+        try {
+            super.setLazyRemoval(lazy);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int purgeRemovedStocks(int budget) {
+        lock.writeLock().lock();
+        try {
+            return super.purgeRemovedStocks(budget);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int getRemovedStocksPending() {
+        lock.readLock().lock();
+        try {
+            return super.getRemovedStocksPending();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void updateStock(String stockId, long timestamp, Float priceDifference) {
+        lock.writeLock().lock();
+        try {
+            super.updateStock(stockId, timestamp, priceDifference);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void applyUpdates(StockUpdate[] updates) {
+        lock.writeLock().lock();
+        try {
+            super.applyUpdates(updates);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Float getStockPrice(String stockId) {
+        lock.readLock().lock();
+        try {
+            return super.getStockPrice(stockId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Float getStockPriceAt(String stockId, long timestamp) {
+        lock.readLock().lock();
+        try {
+            return super.getStockPriceAt(stockId, timestamp);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Candle[] getCandles(String stockId, long from, long to, long width) {
+        lock.readLock().lock();
+        try {
+            return super.getCandles(stockId, from, to, width);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeStockTimestamp(String stockId, long timestamp) {
+        lock.writeLock().lock();
+        try {
+            super.removeStockTimestamp(stockId, timestamp);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int getAmountStocksInPriceRange(Float price1, Float price2) {
+        lock.readLock().lock();
+        try {
+            return super.getAmountStocksInPriceRange(price1, price2);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The count and the list are taken under the same read lock, so the list always matches the count
+    @Override
+    public String[] getStocksInPriceRange(Float price1, Float price2) {
+        lock.readLock().lock();
+        try {
+            return super.getStocksInPriceRange(price1, price2);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Every slice holds the write lock on its own, so an update waits for one slice and not for a whole pass
+    @Override
+    public boolean compactHistories(long cutoff, int budget) {
+        lock.writeLock().lock();
+        try {
+            return super.compactHistories(cutoff, budget);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The cache itself is synchronized, since the readers share it - the lock only guards which cache the manager has
+    @Override
+    public void setRangeCacheCapacity(int capacity) {
+        lock.writeLock().lock();
+        try {
+            super.setRangeCacheCapacity(capacity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public RangeCache getRangeCache() {
+        lock.readLock().lock();
+        try {
+            return super.getRangeCache();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setPriceVersionRetention(long retention) {
+        lock.writeLock().lock();
+        try {
+            super.setPriceVersionRetention(retention);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VersionedPriceIndex getPriceVersions() {
+        lock.readLock().lock();
+        try {
+            return super.getPriceVersions();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getAmountStocksInPriceRangeAt(Float price1, Float price2, long timestamp) {
+        lock.readLock().lock();
+        try {
+            return super.getAmountStocksInPriceRangeAt(price1, price2, timestamp);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String[] getStocksInPriceRangeAt(Float price1, Float price2, long timestamp) {
+        lock.readLock().lock();
+        try {
+            return super.getStocksInPriceRangeAt(price1, price2, timestamp);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The bands are changed by the writers, so subscribing is a write - reading a band needs no lock of the manager
+    @Override
+    public PriceBand subscribePriceBand(Float price1, Float price2, boolean keepMembers, PriceBand.Listener listener) {
+        lock.writeLock().lock();
+        try {
+            return super.subscribePriceBand(price1, price2, keepMembers, listener);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void unsubscribePriceBand(PriceBand band) {
+        lock.writeLock().lock();
+        try {
+            super.unsubscribePriceBand(band);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int getAmountStocks() {
+        lock.readLock().lock();
+        try {
+            return super.getAmountStocks();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getKthCheapestStock(int k) {
+        lock.readLock().lock();
+        try {
+            return super.getKthCheapestStock(k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getKthMostExpensiveStock(int k) {
+        lock.readLock().lock();
+        try {
+            return super.getKthMostExpensiveStock(k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Float getPricePercentile(double percentile) {
+        lock.readLock().lock();
+        try {
+            return super.getPricePercentile(percentile);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Float getMedianPrice() {
+        lock.readLock().lock();
+        try {
+            return super.getMedianPrice();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the counters change under the write lock, so the reader gets a copy of them taken under the read lock
+    @Override
+    public TreeStats getPriceTreeStats() {
+        lock.readLock().lock();
+        try {
+            return super.getPriceTreeStats().copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TreeStats getStockIDTreeStats() {
+        lock.readLock().lock();
+        try {
+            return super.getStockIDTreeStats().copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void checkInvariants() {
+        lock.readLock().lock();
+        try {
+            super.checkInvariants();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    void loadEvent(String stockId, long timestamp, float priceDifference) {
+        lock.writeLock().lock();
+        try {
+            super.loadEvent(stockId, timestamp, priceDifference);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // every page of the cursor is read under the read lock, and the lock is not held between pages
+    @Override
+    void fillPage(PriceRangeCursor cursor) {
+        lock.readLock().lock();
+        try {
+            super.fillPage(cursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stress run of ConcurrentStockManager: one feed thread adds stocks and updates their prices while reader threads
+// query at the same time. The stocks are only added, so the readers can check that every answer is consistent
+// with the answers before it. After the run the trees are checked (StockManager.checkInvariants), and the answers
+// of the manager are compared with the answers of a StockManager that replayed the same feed serially.
+//
+// Run: java ConcurrentStockManagerStress [readers=4] [stocks=10000] [updates=200000] [seed=1]
+//      [backend=ARENA|TREE|COLUMNAR] [fanout=0] - the fanout of B+ tree indexes (0 - the 2-3 Tree, the default)
+// Exits with status 1 if a check failed
+public class ConcurrentStockManagerStress {
+    private static final float MAX_PRICE = 1000;
+    private static final int COMPARED_RANGES = 1000;
+
+    private final int readers;
+    private final HistoryBackend backend;
+    private final IndexBackend indexBackend;
+    private final long seed;
+    // the feed - the stock of every event, and its price (an add) or its price difference (an update)
+    private final int[] eventStocks;
+    private final float[] eventPrices;
+    private final boolean[] eventIsAdd;
+    private final int stocks;
+
+    private final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    private final AtomicLong rounds = new AtomicLong(); // the rounds of queries of all the readers
+    private volatile boolean feeding;
+
+    private ConcurrentStockManagerStress(int readers, int stocks, int updates, long seed, HistoryBackend backend,
+                                         IndexBackend indexBackend) {
+        this.readers = readers;
+        this.stocks = stocks;
+        this.seed = seed;
+        this.backend = backend;
+        this.indexBackend = indexBackend;
+        int events = stocks + updates;
+        this.eventStocks = new int[events];
+        this.eventPrices = new float[events];
+        this.eventIsAdd = new boolean[events];
+        Random random = new Random(seed);
+        float[] prices = new float[stocks];
+        int added = 0;
+        for (int i = 0; i < events; i++) {
+            // the adds are spread over the first half of the feed, so the readers see the trees grow
+            if (added < stocks && i >= (long) added * events / (2L * stocks)) {
+                prices[added] = 1 + random.nextInt((int) MAX_PRICE);
+                eventStocks[i] = added;
+                eventPrices[i] = prices[added];
+                eventIsAdd[i] = true;
+                added++;
+            } else {
+                int stock = random.nextInt(added);
+                float difference = (1 + random.nextInt(20)) * 0.25f;
+                if (prices[stock] - difference > 0 && (prices[stock] + difference > MAX_PRICE || random.nextBoolean())) {
+                    difference = -difference;
+                }
+                prices[stock] += difference;
+                eventStocks[i] = stock;
+                eventPrices[i] = difference;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int readers = 4;
+        int stocks = 10000;
+        int updates = 200000;
+        long seed = 1;
+        HistoryBackend backend = StockManager.DEFAULT_HISTORY_BACKEND;
+        IndexBackend indexBackend = IndexBackend.TWO_THREE;
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException(arg);
+            }
+            switch (parts[0]) {
+                case "readers":
+                    readers = Integer.parseInt(parts[1]);
+                    break;
+                case "stocks":
+                    stocks = Integer.parseInt(parts[1]);
+                    break;
+                case "updates":
+                    updates = Integer.parseInt(parts[1]);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(parts[1]);
+                    break;
+                case "backend":
+                    backend = HistoryBackend.valueOf(parts[1]);
+                    break;
+                case "fanout":
+                    int fanout = Integer.parseInt(parts[1]);
+                    indexBackend = (fanout == 0) ? IndexBackend.TWO_THREE : IndexBackend.bPlus(fanout);
+                    break;
+                default:
+                    throw new IllegalArgumentException(arg);
+            }
+        }
+        if (readers < 1 || stocks < 1 || updates < 0) {
+            throw new IllegalArgumentException();
+        }
+        boolean passed = new ConcurrentStockManagerStress(readers, stocks, updates, seed, backend, indexBackend).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws InterruptedException {
+        ConcurrentStockManager manager = new ConcurrentStockManager(backend, indexBackend, indexBackend);
+        manager.initStocks();
+        feeding = true;
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            long readerSeed = seed * 31 + r;
+            Thread thread = new Thread(() -> read(manager, new Random(readerSeed)), "reader-" + r);
+            threads.add(thread);
+            thread.start();
+        }
+        long start = System.nanoTime();
+        try {
+            feed(manager);
+        } catch (RuntimeException e) {
+            failures.add(e);
+        } finally {
+            feeding = false;
+        }
+        long feedNanos = System.nanoTime() - start;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("%d events fed in %.0f ms, %d rounds of queries by %d readers%n",
+                eventStocks.length, feedNanos / 1e6, rounds.get(), readers);
+        if (failures.isEmpty()) {
+            try {
+                manager.checkInvariants();
+                StockManager serial = new StockManager(backend, indexBackend, indexBackend);
+                serial.initStocks();
+                feed(serial);
+                serial.checkInvariants();
+                compare(manager, serial, new Random(seed));
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        for (Throwable failure : failures) {
+            System.out.println("FAILED: " + failure);
+        }
+        if (failures.isEmpty()) {
+            System.out.println("ok - the trees are valid and the answers match the serial replay");
+        }
+        return failures.isEmpty();
+    }
+
+    private void feed(StockManager manager) {
+        for (int i = 0; i < eventStocks.length; i++) {
+            long timestamp = i + 1;
+            if (eventIsAdd[i]) {
+                manager.addStock(stockId(eventStocks[i]), timestamp, eventPrices[i]);
+            } else {
+                manager.updateStock(stockId(eventStocks[i]), timestamp, eventPrices[i]);
+            }
+        }
+    }
+
+    private static String stockId(int stock) {
+        return "S" + stock;
+    }
+
+    // Query until the feed ends - the amount of stocks and the counters of the priceTree never go down,
+    // and a list of all the stocks is between the counts taken before and after it
+    private void read(ConcurrentStockManager manager, Random random) {
+        try {
+            int lastAmount = 0;
+            long lastInserts = 0;
+            while (feeding) {
+                int before = manager.getAmountStocksInPriceRange(0f, Float.MAX_VALUE);
+                String[] all = manager.getStocksInPriceRange(0f, Float.MAX_VALUE);
+                int after = manager.getAmountStocks();
+                check(before >= lastAmount && before <= all.length && all.length <= after,
+                        "counts " + lastAmount + ", " + before + ", " + all.length + ", " + after + " went down");
+                lastAmount = after;
+                Set<String> seen = new HashSet<>();
+                for (String stockId : all) {
+                    check(stockId != null && seen.add(stockId), "a stock listed twice or null: " + stockId);
+                }
+
+                float price1 = random.nextFloat() * MAX_PRICE;
+                float price2 = price1 + random.nextFloat() * MAX_PRICE / 10;
+                for (String stockId : manager.getStocksInPriceRange(price1, price2)) {
+                    check(stockId != null, "null stock in a range");
+                }
+                int listed = 0;
+                for (PriceRangeCursor cursor = manager.getStocksInPriceRangeCursor(price1, price2, random.nextBoolean(), 0, 100);
+                     cursor.hasNext(); cursor.next()) {
+                    listed++;
+                }
+                check(listed <= 100, "the cursor went past its limit");
+
+                if (after > 0) {
+                    String stockId = manager.getKthCheapestStock(1 + random.nextInt(after));
+                    check(manager.getStockPrice(stockId) > 0, "stock " + stockId + " without a price");
+                    manager.getMedianPrice();
+                }
+                TreeStats stats = manager.getPriceTreeStats();
+                check(stats.inserts >= lastInserts, "the counters of the priceTree went down");
+                lastInserts = stats.inserts;
+                manager.getStockIDTreeStats();
+                rounds.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            failures.add(e);
+        }
+    }
+
+    private void compare(StockManager manager, StockManager serial, Random random) {
+        check(manager.getAmountStocks() == stocks && serial.getAmountStocks() == stocks, "the amount of stocks");
+        String[] all = manager.getStocksInPriceRange(0f, Float.MAX_VALUE);
+        check(Arrays.equals(all, serial.getStocksInPriceRange(0f, Float.MAX_VALUE)), "the list of all the stocks");
+        for (int stock = 0; stock < stocks; stock++) {
+            String stockId = stockId(stock);
+            check(manager.getStockPrice(stockId).equals(serial.getStockPrice(stockId)), "the price of " + stockId);
+        }
+        for (int q = 0; q < COMPARED_RANGES; q++) {
+            float price1 = random.nextFloat() * MAX_PRICE;
+            float price2 = price1 + random.nextFloat() * MAX_PRICE / 10;
+            check(manager.getAmountStocksInPriceRange(price1, price2) == serial.getAmountStocksInPriceRange(price1, price2)
+                    && Arrays.equals(manager.getStocksInPriceRange(price1, price2), serial.getStocksInPriceRange(price1, price2)),
+                    "the range [" + price1 + ", " + price2 + "]");
+            int k = 1 + random.nextInt(stocks);
+            check(manager.getKthCheapestStock(k).equals(serial.getKthCheapestStock(k)), "the " + k + "th cheapest stock");
+        }
+        check(manager.getMedianPrice().equals(serial.getMedianPrice()), "the median price");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
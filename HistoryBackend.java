@@ -0,0 +1,31 @@
+// The data structure that keeps the history of every stock - StockManager.DEFAULT_HISTORY_BACKEND unless chosen
+public enum HistoryBackend {
+    // HistoryTree of HistoryNode objects - every event added is a new HistoryNode with a boxed Long and Float,
+    // so updateStock allocates with this backend
+    TREE,
+    ARENA,  // ArenaTree - nodes in primitive arrays
+    COLUMNAR; // ColumnarHistory - chunks of timestamp and price difference columns
+
+    public StockHistory create() {
+        switch (this) {
+            case ARENA:
+                return new ArenaTree();
+            case COLUMNAR:
+                return new ColumnarHistory();
+            default:
+                return new TreeStockHistory();
+        }
+    }
+
+    // Build a history from events sorted by timestamp
+    public StockHistory build(long[] sortedTimestamps, float[] priceDifferences) {
+        switch (this) {
+            case ARENA:
+                return new ArenaTree(sortedTimestamps, priceDifferences);
+            case COLUMNAR:
+                return new ColumnarHistory(sortedTimestamps, priceDifferences);
+            default:
+                return new TreeStockHistory(sortedTimestamps, priceDifferences);
+        }
+    }
+}
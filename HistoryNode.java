@@ -0,0 +1,49 @@
+// A Node of a HistoryTree - an event of a stock, timestamp to price difference, that keeps the sums of the price
+// differences of its subtree next to its size
+public class HistoryNode extends Node<Long, Float> {
+    protected double sum; // the sum of the price differences of the leaves in the subtree
+    // the lowest and the highest sum of a prefix of the leaves of the subtree, that ends at one of them -
+    // +inf and -inf for a subtree without leaves
+    protected double minPrefix;
+    protected double maxPrefix;
+
+    public HistoryNode(Long key, Float value) {
+        super(key, value);
+    }
+
+    @Override
+    public void reset(Long key, Float value) {
+        super.reset(key, value);
+        if (this.size == 1 && value != null) { // an event - not a sentinel and not an internal node
+            this.sum = value;
+            this.minPrefix = this.sum;
+            this.maxPrefix = this.sum;
+        } else {
+            this.sum = 0;
+            this.minPrefix = Double.POSITIVE_INFINITY;
+            this.maxPrefix = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    // A prefix sum of a child is a prefix sum of the node plus the sums of the children before it
+    @Override
+    public void updateSize() {
+        super.updateSize();
+        this.sum = 0;
+        this.minPrefix = Double.POSITIVE_INFINITY;
+        this.maxPrefix = Double.NEGATIVE_INFINITY;
+        addChild(left);
+        addChild(middle);
+        addChild(right);
+    }
+
+    private void addChild(Node<Long, Float> child) {
+        if (child == null) {
+            return;
+        }
+        HistoryNode x = (HistoryNode) child;
+        this.minPrefix = Math.min(this.minPrefix, this.sum + x.minPrefix);
+        this.maxPrefix = Math.max(this.maxPrefix, this.sum + x.maxPrefix);
+        this.sum += x.sum;
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.function.LongSupplier;
+
+// The retention policy of the histories of a StockManager, run by a background thread: the events older than the
+// cutoff are folded into a checkpoint event at the start of the history of their stock, so old ticks that nobody
+// corrects any more stop taking heap (see StockManager.compactHistories).
+// A pass over the stocks is done in slices of at most SLICE_BUDGET events, and with a ConcurrentStockManager every
+// slice holds the write lock on its own, so updates wait for one slice at most. With a plain StockManager nothing else
+// may use the manager while the retention runs.
+// The cutoff is asked for again at the start of every pass, for example () -> System.currentTimeMillis() - retentionMillis
+public class HistoryRetention implements AutoCloseable {
+    public static final int SLICE_BUDGET = 4096;
+
+    private final StockManager manager;
+    private final LongSupplier cutoff;
+    private final long pauseMillis;     // the pause between two passes
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile long passes;       // the passes that were finished
+    private volatile RuntimeException failure; // a slice failed - the retention stopped
+
+    public HistoryRetention(StockManager manager, LongSupplier cutoff, long pauseMillis) {
+        if (pauseMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.manager = manager;
+        this.cutoff = cutoff;
+        this.pauseMillis = pauseMillis;
+        this.thread = new Thread(this::retentionLoop, "history-retention");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public long getPasses() {
+        return passes;
+    }
+
+    // Stop the thread - a slice that already started is finished first
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("the retention failed", failure);
+        }
+    }
+
+    private void retentionLoop() {
+        try {
+            while (!closed) {
+                long passCutoff = cutoff.getAsLong();
+                while (!closed && !manager.compactHistories(passCutoff, SLICE_BUDGET)) {
+                    Thread.yield(); // let the writers waiting for the lock in between the slices
+                }
+                if (closed) {
+                    return;
+                }
+                passes++;
+                Thread.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+}
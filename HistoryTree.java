@@ -0,0 +1,84 @@
+import java.util.List;
+
+// The Tree of the events of a TreeStockHistory - its nodes are HistoryNodes, so every subtree knows the sum and the
+// extreme prefix sums of its price differences, and a price at a timestamp is one path from the root
+public class HistoryTree extends Tree<Long, Float> {
+    public HistoryTree(Long sentinelMin, Long sentinelMax) {
+        super(sentinelMin, sentinelMax);
+    }
+
+    // Build the tree from events sorted by timestamp, see the bulk constructor of Tree - events may share a timestamp
+    public HistoryTree(Long sentinelMin, Long sentinelMax, List<HistoryNode> sortedEvents) {
+        super(sentinelMin, sentinelMax, sortedEvents, false);
+    }
+
+    @Override
+    protected Node<Long, Float> newNode(Long key, Float value) {
+        return new HistoryNode(key, value);
+    }
+
+    // Returns the sum of the values of the leaves with leaf.key <= key - O(log n) using the sum of every subtree
+    public double prefixSum(Long key) {
+        double sum = 0;
+        Node<Long, Float> x = this.root;
+        while (x.left != null) {
+            if (holdsBound(key, x.left, false)) {
+                x = x.left;
+            } else if (x.middle != null && holdsBound(key, x.middle, false)) {
+                sum += sum(x.left);
+                x = x.middle;
+            } else if (x.right != null) {
+                sum += sum(x.left) + sum(x.middle);
+                x = x.right;
+            } else {
+                return sum + sum(x);
+            }
+        }
+        if (!holdsBound(key, x, false)) {
+            sum += sum(x);
+        }
+        return sum;
+    }
+
+    // The lowest and the highest prefixSum(k) over the keys k of the leaves in [from, to] - result[0] and result[1],
+    // or NaN in both if no leaf is in [from, to]. A subtree inside [from, to] answers with its extreme prefix sums,
+    // so only the subtrees on the paths to the two bounds are opened - O(log n)
+    public void prefixExtremes(Long from, Long to, double[] result) {
+        result[0] = Double.POSITIVE_INFINITY;
+        result[1] = Double.NEGATIVE_INFINITY;
+        if (from.compareTo(to) <= 0) {
+            prefixExtremes((HistoryNode) this.root, null, 0, from, to, result);
+        }
+        if (result[0] > result[1]) {
+            result[0] = Double.NaN;
+            result[1] = Double.NaN;
+        }
+    }
+
+    // The keys of the subtree of x are bigger than low (null - no bound) and not bigger than x.key,
+    // and before is the sum of the leaves before the subtree
+    private void prefixExtremes(HistoryNode x, Long low, double before, Long from, Long to, double[] result) {
+        if (x.key.compareTo(from) < 0 || (low != null && low.compareTo(to) >= 0)) {
+            return; // no key of the subtree is in [from, to]
+        }
+        if (x.key.compareTo(to) <= 0 && (x.left == null || (low != null && low.compareTo(from) >= 0))) {
+            result[0] = Math.min(result[0], before + x.minPrefix);  // all the subtree is in [from, to]
+            result[1] = Math.max(result[1], before + x.maxPrefix);
+            return;
+        }
+        if (x.left == null) {
+            return;
+        }
+        prefixExtremes((HistoryNode) x.left, low, before, from, to, result);
+        if (x.middle != null) {
+            prefixExtremes((HistoryNode) x.middle, x.left.key, before + sum(x.left), from, to, result);
+        }
+        if (x.right != null) {
+            prefixExtremes((HistoryNode) x.right, x.middle.key, before + sum(x.left) + sum(x.middle), from, to, result);
+        }
+    }
+
+    private static double sum(Node<Long, Float> x) {
+        return ((HistoryNode) x).sum;
+    }
+}
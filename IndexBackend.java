@@ -0,0 +1,43 @@
+import java.util.List;
+
+// The data structure of a SortedIndex of StockManager - the 2-3 Tree, or a B+ tree with a given fanout.
+// Not an enum like HistoryBackend, because the fanout of the B+ tree is a parameter
+public final class IndexBackend {
+    public static final IndexBackend TWO_THREE = new IndexBackend(0);   // TreeIndex
+    public static final IndexBackend B_PLUS = bPlus(BPlusTree.DEFAULT_FANOUT);
+
+    private final int fanout;   // 0 - the 2-3 Tree
+
+    private IndexBackend(int fanout) {
+        this.fanout = fanout;
+    }
+
+    // A B+ tree with at most fanout keys in a leaf and fanout children in an inner page
+    public static IndexBackend bPlus(int fanout) {
+        if (fanout < BPlusTree.MIN_FANOUT) {
+            throw new IllegalArgumentException();
+        }
+        return new IndexBackend(fanout);
+    }
+
+    // An empty index - the sentinels are the keys the 2-3 Tree keeps at its ends
+    public <K extends Comparable<K>, V> SortedIndex<K, V> create(K sentinelMin, K sentinelMax) {
+        if (fanout == 0) {
+            return new TreeIndex<>(sentinelMin, sentinelMax);
+        }
+        return new BPlusTree<>(fanout);
+    }
+
+    // Build an index from keys sorted in increasing order - throws if they are not sorted or not different
+    public <K extends Comparable<K>, V> SortedIndex<K, V> build(K sentinelMin, K sentinelMax, List<K> sortedKeys, List<V> values) {
+        if (fanout == 0) {
+            return new TreeIndex<>(sentinelMin, sentinelMax, sortedKeys, values);
+        }
+        return new BPlusTree<>(fanout, sortedKeys, values);
+    }
+
+    @Override
+    public String toString() {
+        return (fanout == 0) ? "TWO_THREE" : "B_PLUS(" + fanout + ")";
+    }
+}
@@ -0,0 +1,344 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Feeds a StockManager from a file of price updates.
+// The calling thread reads the file through a FileChannel and cuts it into chunks at record boundaries,
+// a pool of parser threads turns every chunk into a batch of StockUpdates, and a single writer thread applies the
+// batches to the manager with applyUpdates. The batches pass through a bounded ring buffer in the order of the
+// file, so the updates of every stock are applied in the order they appear in the file, and the reader waits
+// when RING_SIZE chunks are read and not applied yet.
+// Formats:
+//   CSV    - lines of stockId,timestamp,priceDifference. Blank lines are skipped, and so is a first line whose
+//            timestamp is not a number (a header)
+//   BINARY - records of: length of the stockId in chars (2 bytes) | stockId (2 bytes a char) | timestamp (8) |
+//            price difference (4)
+public class IngestPipeline {
+    public enum Format { CSV, BINARY }
+
+    public static final int CHUNK_BYTES = 1 << 20;
+    public static final int RING_SIZE = 64;     // chunks that may be read and not applied yet
+
+    private final StockManager manager;
+    private final int parserThreads;
+
+    // the ring - slot seq % RING_SIZE holds the batch of chunk seq once it is parsed
+    private final StockUpdate[][] ring = new StockUpdate[RING_SIZE][];
+    private long read;          // the number of chunks handed to the parsers
+    private long applied;       // the number of chunks the writer applied
+    private boolean finished;   // the reader handed out the last chunk
+    private Throwable failure;  // a parser or the writer failed - the run stops
+
+    // statistics of the current or the last run
+    private volatile long events;       // updates applied
+    private volatile long rejected;     // updates the manager refused (unknown stock, price difference 0...)
+    private volatile int queueDepth;    // chunks parsed and waiting for the writer
+    private volatile int maxQueueDepth;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public IngestPipeline(StockManager manager, int parserThreads) {
+        if (parserThreads < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.manager = manager;
+        this.parserThreads = parserThreads;
+    }
+
+    // Apply every update of the file to the manager - returns when all of them are applied
+    public void run(Path path, Format format) throws IOException {
+        synchronized (this) {
+            read = 0;
+            applied = 0;
+            finished = false;
+            failure = null;
+        }
+        events = 0;
+        rejected = 0;
+        queueDepth = 0;
+        maxQueueDepth = 0;
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads);
+        Thread writer = new Thread(this::writeLoop, "ingest-writer");
+        writer.start();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+            boolean firstChunk = true;
+            while (true) {
+                boolean endOfFile = channel.read(buffer) < 0;
+                if (endOfFile && buffer.position() == 0) {
+                    break;
+                }
+                buffer.flip();
+                int end = (endOfFile && format == Format.CSV) ? buffer.limit() : recordsEnd(buffer, format);
+                if (endOfFile && end < buffer.remaining()) {
+                    throw new IllegalArgumentException("the file ends in the middle of a record");
+                }
+                if (end == 0) { // a record longer than the buffer
+                    buffer = grow(buffer);
+                    continue;
+                }
+                byte[] chunk = new byte[end];
+                buffer.get(chunk);
+                buffer.compact();
+                long seq = nextSlot();
+                if (seq < 0) {
+                    break; // a parser or the writer failed
+                }
+                boolean header = firstChunk && format == Format.CSV;
+                parsers.execute(() -> parse(seq, chunk, format, header));
+                firstChunk = false;
+            }
+        } finally {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+            parsers.shutdown();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            endNanos = System.nanoTime();
+        }
+        synchronized (this) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer bigger = ByteBuffer.allocate(2 * buffer.capacity());
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    // The number of bytes at the start of buffer that are complete records
+    private static int recordsEnd(ByteBuffer buffer, Format format) {
+        if (format == Format.CSV) {
+            for (int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+                if (buffer.get(i) == '\n') {
+                    return i + 1 - buffer.position();
+                }
+            }
+            return 0;
+        }
+        int i = buffer.position();
+        while (buffer.limit() - i >= 2) {
+            int length = 2 + 2 * buffer.getChar(i) + 8 + 4;
+            if (buffer.limit() - i < length) {
+                break;
+            }
+            i += length;
+        }
+        return i - buffer.position();
+    }
+
+    // Wait for a free slot in the ring and take it - returns the sequence number of the chunk, or -1 if the run failed
+    private synchronized long nextSlot() {
+        while (read - applied >= RING_SIZE && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = e;
+            }
+        }
+        return (failure == null) ? read++ : -1;
+    }
+
+    private void parse(long seq, byte[] chunk, Format format, boolean header) {
+        StockUpdate[] batch;
+        try {
+            batch = (format == Format.CSV) ? parseCsv(chunk, header) : parseBinary(chunk);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            return;
+        }
+        synchronized (this) {
+            ring[(int) (seq % RING_SIZE)] = batch;
+            queueDepth++;
+            maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+            notifyAll();
+        }
+    }
+
+    private static StockUpdate[] parseCsv(byte[] chunk, boolean header) {
+        List<StockUpdate> updates = new ArrayList<>();
+        int i = 0;
+        boolean firstLine = true;
+        while (i < chunk.length) {
+            int lineEnd = i;
+            while (lineEnd < chunk.length && chunk[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int end = (lineEnd > i && chunk[lineEnd - 1] == '\r') ? lineEnd - 1 : lineEnd;
+            if (end > i) {
+                int comma1 = indexOf(chunk, (byte) ',', i, end);
+                int comma2 = (comma1 < 0) ? -1 : indexOf(chunk, (byte) ',', comma1 + 1, end);
+                if (comma2 < 0) {
+                    throw new IllegalArgumentException("bad line: " + new String(chunk, i, end - i, StandardCharsets.UTF_8));
+                }
+                if (!(header && firstLine && !isNumber(chunk, comma1 + 1, comma2))) {
+                    String stockId = new String(chunk, i, comma1 - i, StandardCharsets.UTF_8);
+                    long timestamp = parseLong(chunk, comma1 + 1, comma2);
+                    float priceDifference = Float.parseFloat(new String(chunk, comma2 + 1, end - comma2 - 1, StandardCharsets.ISO_8859_1));
+                    updates.add(new StockUpdate(stockId, timestamp, priceDifference));
+                }
+                firstLine = false;
+            }
+            i = lineEnd + 1;
+        }
+        return updates.toArray(new StockUpdate[0]);
+    }
+
+    private static int indexOf(byte[] bytes, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isNumber(byte[] bytes, int from, int to) {
+        if (from < to && bytes[from] == '-') {
+            from++;
+        }
+        if (from == to) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseLong(byte[] bytes, int from, int to) {
+        if (!isNumber(bytes, from, to)) {
+            throw new IllegalArgumentException("bad timestamp: " + new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        }
+        boolean negative = bytes[from] == '-';
+        long value = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            value = 10 * value + (bytes[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static StockUpdate[] parseBinary(byte[] chunk) {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        List<StockUpdate> updates = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            char[] id = new char[buffer.getChar()];
+            for (int i = 0; i < id.length; i++) {
+                id[i] = buffer.getChar();
+            }
+            long timestamp = buffer.getLong();
+            float priceDifference = buffer.getFloat();
+            updates.add(new StockUpdate(new String(id), timestamp, priceDifference));
+        }
+        return updates.toArray(new StockUpdate[0]);
+    }
+
+    // Apply the batches in the order of the chunks
+    private void writeLoop() {
+        while (true) {
+            StockUpdate[] batch;
+            synchronized (this) {
+                int slot = (int) (applied % RING_SIZE);
+                while (ring[slot] == null && failure == null && !(finished && applied == read)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        failure = e;
+                    }
+                }
+                if (failure != null || ring[slot] == null) {
+                    return;
+                }
+                batch = ring[slot];
+                ring[slot] = null;
+                queueDepth--;
+            }
+            try {
+                apply(batch);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                applied++;
+                notifyAll();
+            }
+        }
+    }
+
+    // applyUpdates checks the whole batch before it changes anything, so if it refuses the batch
+    // the updates are applied one by one and only the illegal ones are skipped
+    private void apply(StockUpdate[] batch) {
+        try {
+            manager.applyUpdates(batch);
+            events += batch.length;
+        } catch (IllegalArgumentException e) {
+            for (StockUpdate update : batch) {
+                try {
+                    manager.updateStock(update.stockId, update.timestamp, update.priceDifference);
+                    events++;
+                } catch (IllegalArgumentException illegal) {
+                    rejected++;
+                }
+            }
+        }
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    // Events applied per second, since the start of the run up to now or to its end
+    public double getEventsPerSecond() {
+        long end = (endNanos != 0) ? endNanos : System.nanoTime();
+        double seconds = (end - startNanos) / 1e9;
+        return (seconds > 0) ? events / seconds : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "events=" + events + ", rejected=" + rejected + ", eventsPerSecond=" + Math.round(getEventsPerSecond())
+                + ", queueDepth=" + queueDepth + ", maxQueueDepth=" + maxQueueDepth;
+    }
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Write-ahead journal of the changes of a StockManager, so its state survives a restart.
+// Every change is one binary record:
+//   type (1 byte) | length of the stockId in chars (2 bytes) | stockId (2 bytes a char) | timestamp (8) | price (4)
+// INIT has no stockId, and REMOVE_STOCK has no timestamp and price. loadStocks is INIT and a LOAD_EVENT for every
+// event of every stock it loaded - a loaded history may start with an event addStock would reject.
+// append only copies the record to a buffer in memory. A flusher thread writes the buffer to the file and forces
+// it to the disk once for the whole group of records, after GROUP_BYTES bytes or after flushMillis.
+// sync() waits until everything appended before it is on the disk.
+public class Journal implements AutoCloseable {
+    public static final byte INIT = 0;
+    public static final byte ADD_STOCK = 1;
+    public static final byte REMOVE_STOCK = 2;
+    public static final byte UPDATE_STOCK = 3;
+    public static final byte REMOVE_STOCK_TIMESTAMP = 4;
+    public static final byte LOAD_EVENT = 5;
+
+    private static final int GROUP_BYTES = 1 << 16;    // a group is written as soon as it has this many bytes
+    private static final int MAX_RECORD_BYTES = 1 + 2 + 2 * 0xFFFF + 8 + 4;
+
+    private final FileChannel channel;
+    private final long flushMillis;
+    private final Thread flusher;
+    private ByteBuffer pending = ByteBuffer.allocate(2 * GROUP_BYTES);  // records not written yet
+    private ByteBuffer writing = ByteBuffer.allocate(2 * GROUP_BYTES);  // the group the flusher writes now
+    private long appended;      // bytes appended since the journal was opened
+    private long durable;       // bytes forced to the disk since the journal was opened
+    private int syncWaiters;    // threads waiting in sync - the flusher does not wait for more records then
+    private boolean closed;
+    private IOException failure; // the flusher failed - the journal can not be used any more
+
+    // Open the journal in path for appending, with groups of at most flushMillis milliseconds
+    public Journal(Path path, long flushMillis) throws IOException {
+        if (flushMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(this.channel.size());
+        this.flushMillis = flushMillis;
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Replay the journal in path into manager, then truncate a record the last run did not finish writing,
+    // and journal the next changes of manager to the same file
+    public static Journal recover(Path path, StockManager manager, long flushMillis) throws IOException {
+        if (path.toFile().exists()) {
+            long length = replay(path, manager);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+        }
+        Journal journal = new Journal(path, flushMillis);
+        manager.setJournal(journal);
+        return journal;
+    }
+
+    // Apply the records in path to manager, which must not journal them again.
+    // Returns the length of the complete records - a record cut in the middle ends the replay
+    public static long replay(Path path, StockManager manager) throws IOException {
+        long length = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(GROUP_BYTES, MAX_RECORD_BYTES));
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                int start = buffer.position();
+                while (applyRecord(buffer, manager)) {
+                    length += buffer.position() - start;
+                    start = buffer.position();
+                }
+                buffer.position(start);
+                buffer.compact();
+            }
+        }
+        return length;
+    }
+
+    // Apply the record at the position of buffer and move past it - returns false if the record is not complete
+    private static boolean applyRecord(ByteBuffer buffer, StockManager manager) {
+        if (buffer.remaining() < 1) {
+            return false;
+        }
+        int start = buffer.position();
+        byte type = buffer.get();
+        if (type == INIT) {
+            manager.initStocks();
+            return true;
+        }
+        if (buffer.remaining() < 2) {
+            buffer.position(start);
+            return false;
+        }
+        int idLength = buffer.getChar();
+        int rest = 2 * idLength + (type == REMOVE_STOCK ? 0 : 8 + 4);
+        if (buffer.remaining() < rest) {
+            buffer.position(start);
+            return false;
+        }
+        char[] id = new char[idLength];
+        for (int i = 0; i < idLength; i++) {
+            id[i] = buffer.getChar();
+        }
+        String stockId = new String(id);
+        if (type == REMOVE_STOCK) {
+            manager.removeStock(stockId);
+            return true;
+        }
+        long timestamp = buffer.getLong();
+        float price = buffer.getFloat();
+        switch (type) {
+            case ADD_STOCK:
+                manager.addStock(stockId, timestamp, price);
+                break;
+            case UPDATE_STOCK:
+                manager.updateStock(stockId, timestamp, price);
+                break;
+            case REMOVE_STOCK_TIMESTAMP:
+                manager.removeStockTimestamp(stockId, timestamp);
+                break;
+            case LOAD_EVENT:
+                manager.loadEvent(stockId, timestamp, price);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown journal record " + type);
+        }
+        return true;
+    }
+
+    public void init() {
+        append(INIT, null, 0, 0);
+    }
+
+    public void addStock(String stockId, long timestamp, float price) {
+        append(ADD_STOCK, stockId, timestamp, price);
+    }
+
+    public void removeStock(String stockId) {
+        append(REMOVE_STOCK, stockId, 0, 0);
+    }
+
+    public void updateStock(String stockId, long timestamp, float priceDifference) {
+        append(UPDATE_STOCK, stockId, timestamp, priceDifference);
+    }
+
+    public void removeStockTimestamp(String stockId, long timestamp) {
+        append(REMOVE_STOCK_TIMESTAMP, stockId, timestamp, 0);
+    }
+
+    public void loadEvent(String stockId, long timestamp, float priceDifference) {
+        append(LOAD_EVENT, stockId, timestamp, priceDifference);
+    }
+
+    private synchronized void append(byte type, String stockId, long timestamp, float price) {
+        if (closed) {
+            throw new IllegalStateException("the journal is closed");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("the journal failed", failure);
+        }
+        if (stockId != null && stockId.length() > 0xFFFF) {
+            throw new IllegalArgumentException();
+        }
+        if (pending.remaining() < MAX_RECORD_BYTES) { // the flusher is behind - make room instead of blocking the caller
+            ByteBuffer bigger = ByteBuffer.allocate(2 * pending.capacity() + MAX_RECORD_BYTES);
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int start = pending.position();
+        pending.put(type);
+        if (type != INIT) {
+            pending.putChar((char) stockId.length());
+            for (int i = 0; i < stockId.length(); i++) {
+                pending.putChar(stockId.charAt(i));
+            }
+            if (type != REMOVE_STOCK) {
+                pending.putLong(timestamp);
+                pending.putFloat(price);
+            }
+        }
+        appended += pending.position() - start;
+        if (pending.position() >= GROUP_BYTES) {
+            notifyAll();
+        }
+    }
+
+    // Wait until every record appended before this call is forced to the disk
+    public void sync() throws IOException {
+        synchronized (this) {
+            long target = appended;
+            syncWaiters++;
+            notifyAll();
+            try {
+                while (durable < target && failure == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the journal", e);
+            } finally {
+                syncWaiters--;
+            }
+            if (failure != null && durable < target) {
+                throw failure;
+            }
+        }
+    }
+
+    // Write the records appended so far, stop the flusher and close the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (this) {
+                try {
+                    while (pending.position() == 0 && !closed) {
+                        wait();
+                    }
+                    // let the group grow, unless it is big enough or somebody waits for it
+                    if (pending.position() < GROUP_BYTES && syncWaiters == 0 && !closed) {
+                        wait(flushMillis);
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (pending.position() == 0 && closed) {
+                    return;
+                }
+                ByteBuffer group = pending;
+                pending = writing;
+                writing = group;
+                target = appended;
+            }
+            try {
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    channel.write(writing);
+                }
+                channel.force(false);
+                writing.clear();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durable = target;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -4,7 +4,7 @@ public class Node<T extends Comparable<T>, V> implements Comparable<Node<T,V>> {
     protected Node<T,V> middle;
     protected Node<T,V> right;
     protected Node<T,V> parent;
-    protected Node<T,V> sister;
+    protected Node<T,V> sister; // for leaves - the leaf before this one in the linear order of the leaves
     protected V value;
     protected int size;
 
@@ -15,9 +15,16 @@ public class Node<T extends Comparable<T>, V> implements Comparable<Node<T,V>> {
     public static final String STRING_SENTINEL_MIN = "\u0000"; //the value is the minimum ASCII (unicode) value
     public static final Float FLOAT_SENTINEL_MAX = Float.POSITIVE_INFINITY;
     public static final Float FLOAT_SENTINEL_MIN = Float.NEGATIVE_INFINITY;
+    public static final Pair<Float, String> PAIR_SENTINEL_MAX = new Pair<>(FLOAT_SENTINEL_MAX, STRING_SENTINEL_MAX);
+    public static final Pair<Float, String> PAIR_SENTINEL_MIN = new Pair<>(FLOAT_SENTINEL_MIN, STRING_SENTINEL_MIN);
 
 
     public Node (T key, V value){
+        reset(key, value);
+    }
+
+    // Make the node a new leaf with key and value - a node that left its tree can be reused instead of a new one
+    public void reset(T key, V value) {
         this.key = key;
         this.left = null;
         this.middle = null;
@@ -32,55 +39,23 @@ public class Node<T extends Comparable<T>, V> implements Comparable<Node<T,V>> {
         }
     }
 
+    // The sentinels are compared to constants of the type of key, so the check allocates nothing
     public boolean checkIfSentinel(T key) {
-        if (key instanceof Long && (key.equals(LONG_SENTINEL_MAX) || key.equals(LONG_SENTINEL_MIN))) {
+        if (key instanceof PriceKey) {   // the key of the priceTree, the most common one
+            return key.equals(PriceKey.SENTINEL_MAX) || key.equals(PriceKey.SENTINEL_MIN);
+        } else if (key instanceof Long && (key.equals(LONG_SENTINEL_MAX) || key.equals(LONG_SENTINEL_MIN))) {
             return true;
         } else if (key instanceof String && (key.equals(STRING_SENTINEL_MAX) || key.equals(STRING_SENTINEL_MIN))) {
             return true;
         } else if (key instanceof Float && (key.equals(FLOAT_SENTINEL_MAX) || key.equals(FLOAT_SENTINEL_MIN))) {
             return true;
         } else if (key instanceof Pair<?, ?>) {
-            Pair<?, ?> pairKey = (Pair<?, ?>) key; // Safely cast key to Pair
-            Pair<Float, String> sentinelPairMax = new Pair<>(FLOAT_SENTINEL_MAX, STRING_SENTINEL_MAX);
-            Pair<Float, String> sentinelPairMin = new Pair<>(FLOAT_SENTINEL_MIN, STRING_SENTINEL_MIN);
-            if (pairKey.equals(sentinelPairMax) || pairKey.equals(sentinelPairMin)){
-                return true;
-            }
+            return key.equals(PAIR_SENTINEL_MAX) || key.equals(PAIR_SENTINEL_MIN);
         }
         return false;
     }
 
 
-    // The function find and set the sister of node
-    public void setSister(){
-        Node<T,V> parent = this.parent;
-        // If node is the right child, then sister is the middle child
-        if (this == parent.right) {
-            if (parent.middle != null) {
-                this.sister = parent.middle;
-                return;
-            }
-        }
-        // If node is the middle child, then sister is the left child
-        if (this == parent.middle){
-            if (parent.left != null){
-                this.sister = parent.left;
-                return;
-            }
-        }
-        // If node is the left child, then we need to find the sister from other parent
-        Node<T, V> nextParent = parent.sister; // So we need all nodes will contain sister
-        if (nextParent != null) {
-            if (nextParent.right != null) {
-                this.sister = nextParent.right; // Set sister to right child of parent sister
-                return;
-            }
-            if (nextParent.middle != null) {
-                this.sister = nextParent.middle; // Set sister to middle child of parent sister
-            }
-        }
-    }
-
     // Set the children - left, middle, right of x
     public void setChildren(Node<T,V> x, Node <T,V> left, Node <T,V> middle, Node <T,V> right) {
         // Set this children
@@ -95,10 +70,11 @@ public class Node<T extends Comparable<T>, V> implements Comparable<Node<T,V>> {
             right.parent = x;
         }
         this.updateKey();
-        this.updateSize();               // update the size in the subtree that the node is its root
-        this.updateSizeAfterSplit();     // After setting children and updating size, ensure the parent also updates its size
+        this.updateSize();               // update the size in the subtree that the node is its root - the caller updates the ancestors
     }
 
+    // Update the size of the subtree that the node is its root - a subclass that keeps more about the subtree
+    // overrides it, and every change of the children that fixes the size fixes the rest too
     public void updateSize() {
         int numOfLeftChilds = 0, numOfMiddleChilds = 0, numOfRightChilds = 0;
         if(left != null) {
@@ -144,12 +120,4 @@ public class Node<T extends Comparable<T>, V> implements Comparable<Node<T,V>> {
     public T getKey() {
         return this.key;  // Return the key stored in this node
     }
-
-    // Method to update the size of the node and propagate it upwards
-    public void updateSizeAfterSplit() {
-        if (this.parent != null) {
-            this.parent.updateSize();  // Update the size of the parent node
-            this.parent.updateSizeAfterSplit(); // Recursively call the updateSizeAfterSplit on the parent to propagate changes upwards
-        }
-    }
 }
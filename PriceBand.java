@@ -0,0 +1,92 @@
+import java.util.HashSet;
+import java.util.Set;
+
+// A standing range query of a StockManager - the stocks with price in [low, high], like getAmountStocksInPriceRange.
+// The manager updates the band in every change of a price that crosses its bounds, so reading its count costs O(1)
+// instead of a query of the priceTree. A band may also keep its members, and may have a listener that is told when
+// a stock enters or exits it. Created by StockManager.subscribePriceBand
+public class PriceBand {
+    // Called by the thread that changed the price, during the change - the listener must not change the manager
+    public interface Listener {
+        void entered(PriceBand band, String stockId, float price);
+
+        void exited(PriceBand band, String stockId, float price); // price - the last price the stock had in the band
+    }
+
+    private final float low;
+    private final float high;
+    private final Listener listener;    // null - no listener
+    private final Set<String> members;  // null - the members are not kept
+    private int count;
+
+    PriceBand(float low, float high, boolean keepMembers, Listener listener) {
+        this.low = low;
+        this.high = high;
+        this.listener = listener;
+        this.members = keepMembers ? new HashSet<>() : null;
+    }
+
+    public float getLow() {
+        return low;
+    }
+
+    public float getHigh() {
+        return high;
+    }
+
+    // The price is in the band - NaN, the price of a stock that is not in the manager, is in no band
+    boolean contains(float price) {
+        return low <= price && price <= high;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public boolean keepsMembers() {
+        return members != null;
+    }
+
+    // The stockIds of the stocks in the band, in no particular order
+    public synchronized String[] getMembers() {
+        if (members == null) {
+            throw new IllegalStateException("the band does not keep its members");
+        }
+        return members.toArray(new String[0]);
+    }
+
+    void enter(String stockId, float price) {
+        synchronized (this) {
+            count++;
+            if (members != null) {
+                members.add(stockId);
+            }
+        }
+        if (listener != null) {
+            listener.entered(this, stockId, price);
+        }
+    }
+
+    void exit(String stockId, float price) {
+        synchronized (this) {
+            count--;
+            if (members != null) {
+                members.remove(stockId);
+            }
+        }
+        if (listener != null) {
+            listener.exited(this, stockId, price);
+        }
+    }
+
+    // Count the band again after the manager changed all at once (initStocks, loadStocks) - the listener is not told
+    synchronized void recount(int count, String[] stockIds) {
+        this.count = count;
+        if (members != null) {
+            members.clear();
+            for (String stockId : stockIds) {
+                members.add(stockId);
+            }
+        }
+    }
+}
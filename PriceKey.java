@@ -0,0 +1,59 @@
+// The key of the priceTree. The price is a primitive float, so comparing keys does not unbox a Float,
+// and only keys with the same price go on to compare their stockId (the same order as Pair<Float, String>).
+public class PriceKey implements Comparable<PriceKey> {
+    public static final PriceKey SENTINEL_MIN = new PriceKey(Float.NEGATIVE_INFINITY, "\u0000");
+    public static final PriceKey SENTINEL_MAX = new PriceKey(Float.POSITIVE_INFINITY, "\uFFFF");
+
+    private float price;
+    private final String stockId; // null for the bounds of range queries - equal to every key with the same price
+
+    public PriceKey(float price, String stockId) {
+        this.price = price;
+        this.stockId = stockId;
+    }
+
+    // Only for a key that is in no index - an index keeps its keys in the order of their prices
+    void setPrice(float price) {
+        this.price = price;
+    }
+
+    public float getPrice() {
+        return price;
+    }
+
+    public String getStockId() {
+        return stockId;
+    }
+
+    @Override
+    public int compareTo(PriceKey other) {
+        int priceComparison = Float.compare(this.price, other.price);
+        if (priceComparison != 0 || this.stockId == null || other.stockId == null) {
+            return priceComparison;
+        }
+        return this.stockId.compareTo(other.stockId);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        PriceKey other = (PriceKey) obj;
+        return Float.compare(price, other.price) == 0 &&
+                (stockId == null ? other.stockId == null : stockId.equals(other.stockId));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Float.hashCode(price) + (stockId == null ? 0 : stockId.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return "(" + price + ", " + stockId + ")";
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Lazy walk over the stockIds in a price range of a StockManager, in ascending or descending price order,
+// instead of the whole range in one String[].
+// The stocks are read in pages - a page is filled by a walk along the leaves of the priceTree, and the next page is
+// found again from the key of the last stock of the page, so the manager may change between two pages.
+// A stock whose price changes between two pages is returned at its new place in the order if it is still ahead
+// (so it may be returned twice), and is missed if it moved behind the cursor.
+public class PriceRangeCursor implements Iterator<String> {
+    static final int PAGE_SIZE = 256;
+
+    final PriceKey low;         // the range - keys without stockId, equal to every key with their price
+    final PriceKey high;
+    final boolean ascending;
+    int skip;                   // stocks to skip before the first stock that is returned (the offset)
+    int remaining;              // stocks that may still be put in a page (the limit)
+    PriceKey last;              // the key of the last stock put in a page, null before the first page
+    final String[] page;
+    int pageSize;               // the number of stocks in page
+    boolean exhausted;          // the last page ended at the end of the range
+
+    private final StockManager manager;
+    private int pageIndex;      // the next stock of page to return
+
+    PriceRangeCursor(StockManager manager, float price1, float price2, boolean ascending, int offset, int limit) {
+        this.manager = manager;
+        this.low = new PriceKey(price1, null);
+        this.high = new PriceKey(price2, null);
+        this.ascending = ascending;
+        this.skip = offset;
+        this.remaining = limit;
+        this.page = new String[Math.min(PAGE_SIZE, limit)];
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pageIndex == pageSize && !exhausted && remaining > 0) {
+            manager.fillPage(this);
+            pageIndex = 0;
+        }
+        return pageIndex < pageSize;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page[pageIndex++];
+    }
+}
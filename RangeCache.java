@@ -0,0 +1,173 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A bounded LRU cache of the results of the range queries of a StockManager, by their price bounds.
+// An entry keeps the count of its range, and the stockIds of the range once getStocksInPriceRange asked for them.
+// A change of a price drops only the entries it touches: a stock that moved into or out of a range drops the entry
+// of the range, and a stock that moved inside a range drops only its stockIds (their order changed, their count did not).
+// Every method is synchronized - the readers of ConcurrentStockManager use the cache at the same time,
+// and a lookup changes the order of the entries
+public class RangeCache {
+    private final int capacity;
+    private final LinkedHashMap<Bounds, Entry> entries;
+    private final Bounds probe = new Bounds(0, 0);  // the key of every lookup, so a hit allocates nothing
+    private long hits;
+    private long misses;
+    private long evictions;     // entries dropped to make room for new ones
+    private long invalidations; // entries (or stockIds of entries) dropped by changes of prices
+
+    private static final class Bounds {
+        float low;
+        float high;
+
+        Bounds(float low, float high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Bounds)) {
+                return false;
+            }
+            Bounds other = (Bounds) obj;
+            return Float.compare(low, other.low) == 0 && Float.compare(high, other.high) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Float.hashCode(low) + Float.hashCode(high);
+        }
+    }
+
+    private static final class Entry {
+        int count;
+        String[] stockIds;  // null - not cached
+    }
+
+    RangeCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Bounds, Entry>(16, 0.75f, true) { // access order - the eldest is the least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Bounds, Entry> eldest) {
+                if (size() > RangeCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // The cached count of [low, high], or -1
+    synchronized int count(float low, float high) {
+        Entry entry = lookup(low, high);
+        if (entry == null) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        return entry.count;
+    }
+
+    // A copy of the cached stockIds of [low, high], or null
+    synchronized String[] stockIds(float low, float high) {
+        Entry entry = lookup(low, high);
+        if (entry == null || entry.stockIds == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.stockIds.clone();
+    }
+
+    private Entry lookup(float low, float high) {
+        probe.low = low;
+        probe.high = high;
+        return entries.get(probe);
+    }
+
+    synchronized void putCount(float low, float high, int count) {
+        entry(low, high).count = count;
+    }
+
+    synchronized void putStockIds(float low, float high, String[] stockIds) {
+        Entry entry = entry(low, high);
+        entry.count = stockIds.length;
+        entry.stockIds = stockIds.clone();
+    }
+
+    private Entry entry(float low, float high) {
+        Entry entry = lookup(low, high);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(new Bounds(low, high), entry);
+        }
+        return entry;
+    }
+
+    // The price of a stock moved from prevPrice to newPrice (NaN - the stock was added or removed)
+    synchronized void priceChanged(float prevPrice, float newPrice) {
+        Iterator<Map.Entry<Bounds, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Bounds, Entry> mapEntry = iterator.next();
+            Bounds bounds = mapEntry.getKey();
+            boolean wasIn = bounds.low <= prevPrice && prevPrice <= bounds.high;
+            boolean isIn = bounds.low <= newPrice && newPrice <= bounds.high;
+            if (wasIn != isIn) {
+                iterator.remove();
+                invalidations++;
+            } else if (wasIn && mapEntry.getValue().stockIds != null) {
+                mapEntry.getValue().stockIds = null;
+                invalidations++;
+            }
+        }
+    }
+
+    // The manager changed all at once (initStocks, loadStocks) - the counters are kept
+    synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        invalidations = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + entries.size() + ", capacity=" + capacity + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", invalidations=" + invalidations;
+    }
+}
@@ -0,0 +1,66 @@
+// The background purge of the stocks a StockManager removed lazily (see StockManager.setLazyRemoval): a thread
+// deletes the tombstones from the stockIDTree and the priceTree in slices of at most budget stocks, so a wave of
+// removals costs the thread that removes them only a tombstone each.
+// With a ConcurrentStockManager every slice holds the write lock on its own, so updates wait for one slice at most.
+// With a plain StockManager nothing else may use the manager while the purge runs.
+// When no tombstones are left the thread sleeps for pauseMillis before it looks again
+public class RemovalPurge implements AutoCloseable {
+    private final StockManager manager;
+    private final int budget;           // the stocks purged in a slice
+    private final long pauseMillis;
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile long purged;       // the stocks purged so far
+    private volatile RuntimeException failure; // a slice failed - the purge stopped
+
+    public RemovalPurge(StockManager manager, int budget, long pauseMillis) {
+        if (budget < 1 || pauseMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.manager = manager;
+        this.budget = budget;
+        this.pauseMillis = pauseMillis;
+        this.thread = new Thread(this::purgeLoop, "removal-purge");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public long getPurged() {
+        return purged;
+    }
+
+    // Stop the thread - a slice that already started is finished first
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("the purge failed", failure);
+        }
+    }
+
+    private void purgeLoop() {
+        try {
+            while (!closed) {
+                int slice;
+                while (!closed && (slice = manager.purgeRemovedStocks(budget)) > 0) {
+                    purged += slice;
+                    Thread.yield(); // let the writers waiting for the lock in between the slices
+                }
+                if (closed) {
+                    return;
+                }
+                Thread.sleep(pauseMillis);
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+}
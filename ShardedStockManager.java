@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// StockManager split into shards - every stock belongs to one shard by the hash of its stockId, and every shard is
+// a StockManager with its own read-write lock, like ConcurrentStockManager: the queries share the read lock and the
+// changes take the write lock.
+// A call on one stock runs in the calling thread under the lock of its shard - there is no handoff to another thread,
+// and callers of different shards work on different cores at the same time.
+// applyUpdates splits the batch by shard and applies the parts in parallel, on a thread of every shard.
+// The range queries ask all the shards at the same time the same way and combine the answers -
+// the counts are summed and the sorted lists are merged.
+// A query sees every shard at a slightly different moment, like queries on different StockManagers.
+public class ShardedStockManager implements AutoCloseable {
+    private final StockManager[] shards;
+    private final ReentrantReadWriteLock[] locks; // locks[i] guards shards[i]
+    private final ExecutorService[] threads;      // threads[i] runs the parts of applyUpdates and the queries of shards[i]
+
+    public ShardedStockManager(int shardsCount) {
+        this(shardsCount, StockManager.DEFAULT_HISTORY_BACKEND);
+    }
+
+    public ShardedStockManager(int shardsCount, HistoryBackend historyBackend) {
+        if (shardsCount < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.shards = new StockManager[shardsCount];
+        this.locks = new ReentrantReadWriteLock[shardsCount];
+        this.threads = new ExecutorService[shardsCount];
+        for (int i = 0; i < shardsCount; i++) {
+            shards[i] = new StockManager(historyBackend);
+            locks[i] = new ReentrantReadWriteLock();
+            String name = "shard-" + i;
+            threads[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // The shard of stockId
+    private int shardOf(String stockId) {
+        int h = stockId.hashCode();
+        h = (h ^ (h >>> 16)) * 0x9E3779B9; // spread the bits like StockIndex does, so similar stockIds spread too
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    // Run task on the shard in the calling thread, under the write lock of the shard if it changes the shard
+    // and under the read lock if it does not
+    private <T> T call(int shard, boolean write, ShardTask<T> task) {
+        Lock lock = write ? locks[shard].writeLock() : locks[shard].readLock();
+        lock.lock();
+        try {
+            return task.run(shard, shards[shard]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Run a task of every shard at the same time, on the threads of the shards, and wait for all of them
+    private <T> List<T> callAll(boolean write, ShardTask<T> task) {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int index = i;
+            futures.add(threads[i].submit(() -> call(index, write, task)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        RuntimeException failure = null;
+        for (Future<T> future : futures) {  // wait for all the shards, even if one of them failed
+            try {
+                results.add(await(future));
+            } catch (RuntimeException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private interface ShardTask<T> {
+        T run(int index, StockManager shard);
+    }
+
+    // 1. Initialize the system
+    public void initStocks() {
+        callAll(true, (index, shard) -> {
+            shard.initStocks();
+            return null;
+        });
+    }
+
+    // 2. Add a new stock
+    public void addStock(String stockId, long timestamp, Float price) {
+        call(shardOf(stockId), true, (index, shard) -> {
+            shard.addStock(stockId, timestamp, price);
+            return null;
+        });
+    }
+
+    // 3. Remove a stock
+    public void removeStock(String stockId) {
+        call(shardOf(stockId), true, (index, shard) -> {
+            shard.removeStock(stockId);
+            return null;
+        });
+    }
+
+    // 4. Update a stock price
+    public void updateStock(String stockId, long timestamp, Float priceDifference) {
+        call(shardOf(stockId), true, (index, shard) -> {
+            shard.updateStock(stockId, timestamp, priceDifference);
+            return null;
+        });
+    }
+
+    // Split the batch by shard and apply the parts in parallel - the updates of every stock keep their order.
+    // Every shard checks only its part, so an illegal update stops the part of its shard and the other parts are applied
+    public void applyUpdates(StockUpdate[] updates) {
+        List<List<StockUpdate>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (StockUpdate update : updates) {
+            parts.get(shardOf(update.stockId)).add(update);
+        }
+        callAll(true, (index, shard) -> {
+            List<StockUpdate> part = parts.get(index);
+            if (!part.isEmpty()) {
+                shard.applyUpdates(part.toArray(new StockUpdate[0]));
+            }
+            return null;
+        });
+    }
+
+    // 5. Get the current price of a stock
+    public Float getStockPrice(String stockId) {
+        return call(shardOf(stockId), false, (index, shard) -> shard.getStockPrice(stockId));
+    }
+
+    public Float getStockPriceAt(String stockId, long timestamp) {
+        return call(shardOf(stockId), false, (index, shard) -> shard.getStockPriceAt(stockId, timestamp));
+    }
+
+    public Candle[] getCandles(String stockId, long from, long to, long width) {
+        return call(shardOf(stockId), false, (index, shard) -> shard.getCandles(stockId, from, to, width));
+    }
+
+    // 6. Remove a specific timestamp from a stock's history
+    public void removeStockTimestamp(String stockId, long timestamp) {
+        call(shardOf(stockId), true, (index, shard) -> {
+            shard.removeStockTimestamp(stockId, timestamp);
+            return null;
+        });
+    }
+
+    // 7. Get the amount of stocks in a given price range - the sum of the amounts of the shards
+    public int getAmountStocksInPriceRange(Float price1, Float price2) {
+        if (price2 < price1) {
+            throw new IllegalArgumentException();
+        }
+        int amount = 0;
+        for (int shardAmount : callAll(false, (index, shard) -> shard.getAmountStocksInPriceRange(price1, price2))) {
+            amount += shardAmount;
+        }
+        return amount;
+    }
+
+    // 8. Get a list of stock IDs within a given price range - a k-way merge of the sorted lists of the shards
+    public String[] getStocksInPriceRange(Float price1, Float price2) {
+        if (price2 < price1) {
+            throw new IllegalArgumentException();
+        }
+        // every shard returns its stocks with their prices, so the lists can be merged in the order of PriceKey -
+        // under one read lock, so the prices are the prices the stocks were sorted by
+        List<ShardRange> ranges = callAll(false, (index, shard) -> {
+            String[] stockIds = shard.getStocksInPriceRange(price1, price2);
+            float[] prices = new float[stockIds.length];
+            for (int i = 0; i < stockIds.length; i++) {
+                prices[i] = shard.getStockPrice(stockIds[i]);
+            }
+            return new ShardRange(stockIds, prices);
+        });
+        int amount = 0;
+        PriorityQueue<ShardRange> heads = new PriorityQueue<>(shards.length, (range1, range2) -> {
+            int byPrice = Float.compare(range1.prices[range1.next], range2.prices[range2.next]);
+            return (byPrice != 0) ? byPrice : range1.stockIds[range1.next].compareTo(range2.stockIds[range2.next]);
+        });
+        for (ShardRange range : ranges) {
+            amount += range.stockIds.length;
+            if (range.stockIds.length > 0) {
+                heads.add(range);
+            }
+        }
+        String[] returnArr = new String[amount];
+        for (int i = 0; i < amount; i++) {
+            ShardRange range = heads.poll();
+            returnArr[i] = range.stockIds[range.next++];
+            if (range.next < range.stockIds.length) {
+                heads.add(range);
+            }
+        }
+        return returnArr;
+    }
+
+    // The sorted stocks in the range of one shard, and the next of them to merge
+    private static class ShardRange {
+        final String[] stockIds;
+        final float[] prices;
+        int next;
+
+        ShardRange(String[] stockIds, float[] prices) {
+            this.stockIds = stockIds;
+            this.prices = prices;
+        }
+    }
+
+    // The number of stocks in all the shards
+    public int getAmountStocks() {
+        int amount = 0;
+        for (int shardAmount : callAll(false, (index, shard) -> shard.getAmountStocks())) {
+            amount += shardAmount;
+        }
+        return amount;
+    }
+
+    // Stop the threads of the shards - the tasks that were already submitted are finished first.
+    // The calls on one stock do not use the threads, but the batches and the range queries fail after close
+    @Override
+    public void close() {
+        for (ExecutorService thread : threads) {
+            thread.shutdown();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// The state of a StockManager in a binary file - every stock, sorted by stockId, with its current price and its
+// history in columns:
+//   MAGIC (4 bytes) | VERSION (4) | number of stocks (4)
+//   for every stock: length of the stockId in chars (2) | stockId (2 bytes a char) | current price (4) |
+//                    number of events (4) | timestamps (8 bytes each) | price differences (4 bytes each)
+// The file is written through a FileChannel and read back through a memory mapping, and the events come out
+// sorted, so StockManager builds its trees from them in bulk instead of replaying every event.
+public class Snapshot {
+    public static final int MAGIC = 0x53544B53; // "STKS"
+    public static final int VERSION = 1;
+
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final long MAX_MAPPING_BYTES = 1L << 30; // the file is mapped in windows of at most this size
+
+    // the stocks of the snapshot, as StockManager.loadStocks gets them
+    public final String[] stockIds;
+    public final long[][] timestamps;
+    public final float[][] prices;
+    public final float[] currentPrices;
+
+    private Snapshot(String[] stockIds, long[][] timestamps, float[][] prices, float[] currentPrices) {
+        this.stockIds = stockIds;
+        this.timestamps = timestamps;
+        this.prices = prices;
+        this.currentPrices = currentPrices;
+    }
+
+    // Write the stocks to path. The file is written next to path and moved over it when it is complete,
+    // so a crash in the middle leaves the old snapshot as it was
+    public static void write(Path path, Stock[] stocks) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(stocks.length);
+            long[] timestamps = new long[0];
+            float[] priceDifferences = new float[0];
+            for (Stock stock : stocks) {
+                String stockId = stock.stockID;
+                if (stockId.length() > 0xFFFF) {
+                    throw new IllegalArgumentException();
+                }
+                int events = stock.updateStockEvents.size();
+                if (timestamps.length < events) {
+                    timestamps = new long[events];
+                    priceDifferences = new float[events];
+                }
+                stock.updateStockEvents.copyTo(timestamps, priceDifferences);
+
+                ensure(channel, buffer, 2 + 2 * stockId.length() + 4 + 4);
+                buffer.putChar((char) stockId.length());
+                for (int i = 0; i < stockId.length(); i++) {
+                    buffer.putChar(stockId.charAt(i));
+                }
+                buffer.putFloat(stock.currentPrice);
+                buffer.putInt(events);
+                putLongs(channel, buffer, timestamps, events);
+                putFloats(channel, buffer, priceDifferences, events);
+            }
+            flush(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Make room for bytes more bytes in buffer
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    // Write the first count values, as many values at once as buffer has room for
+    private static void putLongs(FileChannel channel, ByteBuffer buffer, long[] values, int count) throws IOException {
+        int i = 0;
+        while (i < count) {
+            ensure(channel, buffer, 8);
+            int n = Math.min(count - i, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(values, i, n);
+            buffer.position(buffer.position() + 8 * n);
+            i += n;
+        }
+    }
+
+    private static void putFloats(FileChannel channel, ByteBuffer buffer, float[] values, int count) throws IOException {
+        int i = 0;
+        while (i < count) {
+            ensure(channel, buffer, 4);
+            int n = Math.min(count - i, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(values, i, n);
+            buffer.position(buffer.position() + 4 * n);
+            i += n;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    public static Snapshot read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedReader reader = new MappedReader(channel);
+            if (reader.getInt() != MAGIC || reader.getInt() != VERSION) {
+                throw new IOException("not a snapshot: " + path);
+            }
+            int count = reader.getInt();
+            if (count < 0) {
+                throw new IOException("corrupt snapshot: " + path);
+            }
+            String[] stockIds = new String[count];
+            long[][] timestamps = new long[count][];
+            float[][] prices = new float[count][];
+            float[] currentPrices = new float[count];
+            for (int s = 0; s < count; s++) {
+                char[] id = new char[reader.getChar()];
+                for (int i = 0; i < id.length; i++) {
+                    id[i] = reader.getChar();
+                }
+                stockIds[s] = new String(id);
+                currentPrices[s] = reader.getFloat();
+                int events = reader.getInt();
+                if (events < 0) {
+                    throw new IOException("corrupt snapshot: " + path);
+                }
+                timestamps[s] = new long[events];
+                prices[s] = new float[events];
+                reader.getLongs(timestamps[s]);
+                reader.getFloats(prices[s]);
+            }
+            return new Snapshot(stockIds, timestamps, prices, currentPrices);
+        }
+    }
+
+    // Reads a file through windows of a memory mapping, so files bigger than one mapping can be read
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long length;
+        private long windowStart;   // the position in the file of the start of the window
+        private MappedByteBuffer window;
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.length = channel.size();
+            map(0);
+        }
+
+        private void map(long start) throws IOException {
+            windowStart = start;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAX_MAPPING_BYTES, length - start));
+        }
+
+        // Make sure the next bytes bytes are in the window
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes) {
+                long position = windowStart + window.position();
+                if (length - position < bytes) {
+                    throw new IOException("the snapshot ends in the middle");
+                }
+                map(position);
+            }
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        char getChar() throws IOException {
+            ensure(2);
+            return window.getChar();
+        }
+
+        float getFloat() throws IOException {
+            ensure(4);
+            return window.getFloat();
+        }
+
+        // Fill values, as many values at once as the window holds
+        void getLongs(long[] values) throws IOException {
+            int i = 0;
+            while (i < values.length) {
+                ensure(8);
+                int n = Math.min(values.length - i, window.remaining() / 8);
+                window.asLongBuffer().get(values, i, n);
+                window.position(window.position() + 8 * n);
+                i += n;
+            }
+        }
+
+        void getFloats(float[] values) throws IOException {
+            int i = 0;
+            while (i < values.length) {
+                ensure(4);
+                int n = Math.min(values.length - i, window.remaining() / 4);
+                window.asFloatBuffer().get(values, i, n);
+                window.position(window.position() + 4 * n);
+                i += n;
+            }
+        }
+    }
+}
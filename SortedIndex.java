@@ -0,0 +1,35 @@
+// Sorted map from keys to values, with the number of keys before a key and access by position -
+// the priceTree and the stockIDTree of StockManager. Positions start at 1, like Tree.rank.
+// TreeIndex keeps it in the 2-3 Tree and BPlusTree in a B+ tree with configurable fanout (chosen with IndexBackend).
+public interface SortedIndex<K extends Comparable<K>, V> {
+    void insert(K key, V value);    // the key must not be in the index
+
+    V search(K key);    // the value of key, or null if key is not in the index
+
+    V delete(K key);    // remove key and return its value, or null if key is not in the index
+
+    int size();
+
+    int countLess(K key);           // the number of keys < key
+
+    int countLessOrEqual(K key);    // the number of keys <= key
+
+    Cursor<K, V> select(int k);     // a cursor on the key at position k - not valid if k is not in [1, size()]
+
+    TreeStats stats();  // the counters of the work done in inserts and deletes
+
+    void checkInvariants();     // throws IllegalStateException if the structure is broken - O(n), for stress tests
+
+    // A position in the index that moves to the next or previous key - valid until the index is changed
+    interface Cursor<K, V> {
+        boolean valid();    // false - the cursor moved past the first or the last key
+
+        K key();
+
+        V value();
+
+        void next();
+
+        void previous();
+    }
+}
@@ -1,21 +1,34 @@
 public class Stock {
     public String stockID;
-    public Tree<Long, Float> updateStockEvents;
-    public Float currentPrice;
+    public StockHistory updateStockEvents;
+    public float currentPrice;
+    PriceKey priceKey;      // the key of the stock in the priceTree
+    PriceKey spareKey;      // another key of the stock, in no index - the next move of the price reuses it
+    private Float boxedPrice; // currentPrice boxed by getCurrentPrice - boxed again only after the price changed
 
     public static final Long LONG_SENTINEL_MAX = Long.MAX_VALUE;
     public static final Long LONG_SENTINEL_MIN = Long.MIN_VALUE;
 
-    Stock(String stockID, Float currentPrice, long timestamp) {
+    Stock(String stockID, float currentPrice, long timestamp, HistoryBackend historyBackend) {
         this.stockID = stockID;     // update the new stockID
-        this.updateStockEvents = new Tree<>();  //create new tree of the inner updates of the specific stock
-        this.updateStockEvents.init(LONG_SENTINEL_MIN, LONG_SENTINEL_MAX);  // init the updates tree
+        this.updateStockEvents = historyBackend.create();  //create new history of the inner updates of the specific stock
+        this.currentPrice = currentPrice;
+        this.updateStockEvents.add(timestamp, currentPrice);    //insert the first price into the history
+    }
+
+    // The stock with a ready history - used when the stocks are loaded in bulk
+    Stock(String stockID, StockHistory updateStockEvents, float currentPrice) {
+        this.stockID = stockID;
+        this.updateStockEvents = updateStockEvents;
         this.currentPrice = currentPrice;
-        Node<Long, Float> node = new Node<>(timestamp, currentPrice);
-        this.updateStockEvents.insert(node);    //insert the first price into the updatesTree
     }
 
     public Float getCurrentPrice() {
-        return this.currentPrice;
+        Float boxed = boxedPrice;
+        if (boxed == null || boxed != currentPrice) {
+            boxed = currentPrice;
+            boxedPrice = boxed;
+        }
+        return boxed;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+// The price update events of one stock, ordered by timestamp.
+// The first event holds the price the stock was added with and every other event holds a price difference.
+public interface StockHistory {
+    void add(long timestamp, float priceDifference);
+
+    boolean contains(long timestamp);
+
+    float remove(long timestamp);   // returns the price difference of the removed event
+
+    long firstTimestamp();
+
+    long lastTimestamp();
+
+    double priceAt(long timestamp); // the sum of the price differences of the events up to timestamp (included)
+
+    // The lowest and the highest priceAt(t) over the timestamps t of the events in [from, to] - result[0] and
+    // result[1], or NaN in both if no event is in [from, to]
+    void priceExtremes(long from, long to, double[] result);
+
+    int size();
+
+    // Copy the events in timestamp order to the first size() slots of the arrays
+    void copyTo(long[] timestamps, float[] priceDifferences);
+
+    // Fold the oldest events with timestamp < cutoff into one checkpoint event, removing at most maxEvents events.
+    // The checkpoint has the timestamp of the last folded event and the sum of the folded events, and it is the new
+    // first event - so priceAt any timestamp from the checkpoint on stays the same (up to float rounding), and the
+    // folded events are gone. A checkpoint of 0 is not an event, so when the folded events cancel out one event less
+    // is folded - or one more if only two would be, so that even maxEvents 1 folds something.
+    // Returns true if maxEvents stopped the fold before the cutoff - the next call may fold more
+    boolean compact(long cutoff, int maxEvents);
+
+    // The timestamp of the checkpoint of the last compact that folded events, or Long.MIN_VALUE if none did.
+    // The checkpoint holds the price of all the folded events, so it must not be removed like an ordinary event -
+    // it stays the base of the price even after an event older than it is added and it is no longer the first event
+    long checkpointTimestamp();
+}
@@ -0,0 +1,106 @@
+// Hash table from stockId to its Stock, with open addressing and linear probing.
+// StockManager keeps it next to the stockIDTree, so finding a stock by its stockId takes O(1) instead of a
+// search down the tree. The table is at most half full, so a probe sequence stays short.
+public class StockIndex {
+    private static final int MIN_CAPACITY = 16; // must be a power of 2
+
+    private String[] keys;  // null - an empty slot
+    private Stock[] values;
+    private int size;
+
+    public StockIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    // An index for about expectedSize stocks, so loading them does not resize the table
+    public StockIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * expectedSize) {
+            capacity *= 2;
+        }
+        this.keys = new String[capacity];
+        this.values = new Stock[capacity];
+        this.size = 0;
+    }
+
+    // The slot the probe sequence of stockId starts from
+    private int slot(String stockId) {
+        int h = stockId.hashCode(); // String caches its hash code
+        h = (h ^ (h >>> 16)) * 0x9E3779B9; // spread the high bits into the low bits the mask keeps
+        return (h ^ (h >>> 16)) & (keys.length - 1);
+    }
+
+    // Return the stock of stockId, or null if it is not in the index
+    public Stock get(String stockId) {
+        int mask = keys.length - 1;
+        for (int i = slot(stockId); keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(stockId)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public void put(String stockId, Stock stock) {
+        if (2 * (size + 1) > keys.length) {
+            resize(2 * keys.length);
+        }
+        int mask = keys.length - 1;
+        int i = slot(stockId);
+        while (keys[i] != null) {
+            if (keys[i].equals(stockId)) {
+                values[i] = stock;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = stockId;
+        values[i] = stock;
+        size++;
+    }
+
+    // Remove stockId and return its stock, or null if it is not in the index.
+    // The entries after the removed one are shifted back, so no probe sequence is broken and no tombstones are needed
+    public Stock remove(String stockId) {
+        int mask = keys.length - 1;
+        int i = slot(stockId);
+        while (keys[i] != null && !keys[i].equals(stockId)) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == null) {
+            return null;
+        }
+        Stock stock = values[i];
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // the entry in j may move to the hole only if its probe sequence passes through the hole
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = null;
+        values[hole] = null;
+        size--;
+        return stock;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize(int capacity) {
+        String[] oldKeys = keys;
+        Stock[] oldValues = values;
+        keys = new String[capacity];
+        values = new Stock[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
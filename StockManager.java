@@ -1,6 +1,31 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
 public class StockManager {
-    private Tree<Pair<Float, String>, String> priceTree;
-    private Tree<String, Stock> stockIDTree;
+    private SortedIndex<PriceKey, String> priceTree;
+    private SortedIndex<String, Stock> stockIDTree;
+    private StockIndex stockIndex; // the stocks of stockIDTree by their stockId, for O(1) lookups
+    private final HistoryBackend historyBackend; // the data structure of the history of every stock
+    private final IndexBackend priceIndexBackend; // the data structures of priceTree and stockIDTree
+    private final IndexBackend stockIdIndexBackend;
+    private Journal journal; // the journal every change is written to, or null
+    private final List<PriceBand> priceBands = new ArrayList<>(); // the standing range queries, see subscribePriceBand
+    private RangeCache rangeCache; // the results of recent range queries, or null, see setRangeCacheCapacity
+    private String compactionPosition; // the stockId the last slice of compactHistories stopped after, null - none
+    private VersionedPriceIndex priceVersions; // the past versions of the priceTree, or null, see setPriceVersionRetention
+    private long clock = Long.MIN_VALUE; // the largest timestamp of the events the manager was given
+    private boolean lazyRemoval; // removeStock leaves the stock in the trees for purgeRemovedStocks, see setLazyRemoval
+    // the stocks removed lazily that are still in stockIDTree and priceTree, in the order they were removed,
+    // and their keys in the priceTree - the queries subtract them from the counts of the priceTree and skip them
+    private final Map<String, Stock> removedStocks = new LinkedHashMap<>();
+    private SortedIndex<PriceKey, String> removedPrices;
 
     // Define sentinels as constants
     public static final Long LONG_SENTINEL_MAX = Long.MAX_VALUE;
@@ -9,69 +34,290 @@ public class StockManager {
     public static final String STRING_SENTINEL_MIN = "\u0000"; //the value is the minimum ASCII (unicode) value
     public static final Float FLOAT_SENTINEL_MAX = Float.POSITIVE_INFINITY;
     public static final Float FLOAT_SENTINEL_MIN = Float.NEGATIVE_INFINITY;
+    // the history of the managers built without one - ARENA keeps the events in primitive arrays and reuses the
+    // slots of removed events, so updateStock allocates nothing once the histories stopped growing
+    public static final HistoryBackend DEFAULT_HISTORY_BACKEND = HistoryBackend.ARENA;
 
     public StockManager() {
-        this.priceTree = new Tree<Pair<Float, String>, String>();
-        this.stockIDTree = new Tree<String, Stock>();
+        this(DEFAULT_HISTORY_BACKEND);
+    }
+
+    public StockManager(HistoryBackend historyBackend) {
+        this(historyBackend, IndexBackend.TWO_THREE, IndexBackend.TWO_THREE);
+    }
+
+    public StockManager(HistoryBackend historyBackend, IndexBackend priceIndexBackend, IndexBackend stockIdIndexBackend) {
+        this.historyBackend = historyBackend;
+        this.priceIndexBackend = priceIndexBackend;
+        this.stockIdIndexBackend = stockIdIndexBackend;
+        this.priceTree = priceIndexBackend.create(PriceKey.SENTINEL_MIN, PriceKey.SENTINEL_MAX);
+        this.stockIDTree = stockIdIndexBackend.create(STRING_SENTINEL_MIN, STRING_SENTINEL_MAX);
+        this.stockIndex = new StockIndex();
+        this.removedPrices = priceIndexBackend.create(PriceKey.SENTINEL_MIN, PriceKey.SENTINEL_MAX);
     }
 
     // 1. Initialize the system
     public void initStocks() {
-        priceTree.init(
-                new Pair<>(FLOAT_SENTINEL_MIN, STRING_SENTINEL_MIN),
-                new Pair<>(FLOAT_SENTINEL_MAX, STRING_SENTINEL_MAX)
-        );
-        stockIDTree.init(STRING_SENTINEL_MIN, STRING_SENTINEL_MAX);
+        priceTree = priceIndexBackend.create(PriceKey.SENTINEL_MIN, PriceKey.SENTINEL_MAX);
+        stockIDTree = stockIdIndexBackend.create(STRING_SENTINEL_MIN, STRING_SENTINEL_MAX);
+        stockIndex = new StockIndex();
+        removedStocks.clear();
+        removedPrices = priceIndexBackend.create(PriceKey.SENTINEL_MIN, PriceKey.SENTINEL_MAX);
+        clock = Long.MIN_VALUE;
+        recountPriceBands();
+        if (rangeCache != null) {
+            rangeCache.clear();
+        }
+        if (priceVersions != null) {
+            priceVersions.reset(clock, new PriceKey[0]);
+        }
+        if (journal != null) {
+            journal.init();
+        }
+    }
+
+    // Write every change from now on to journal (null - stop journaling).
+    // Replay the old journal before this, so its records are not journaled again
+    public void setJournal(Journal journal) {
+        this.journal = journal;
     }
 
 
+    // Initialize the system with many stocks at once, instead of initStocks and an addStock call for each stock.
+    // timestamps[i] and prices[i] are the history of stockIds[i], sorted by timestamp: the first event is the
+    // price the stock was added with and the rest are price differences, as updateStock gets them.
+    // The trees are built bottom up from sorted leaves, and the history trees are built in parallel.
+    public void loadStocks(String[] stockIds, long[][] timestamps, float[][] prices) {
+        loadStocks(stockIds, timestamps, prices, null);
+    }
+
+    // loadStocks with the current price of every stock - removing an event subtracts its price difference from
+    // the current price, so the current price may differ in the last bits from the sum of the history.
+    // currentPrices == null - sum the history of every stock
+    public void loadStocks(String[] stockIds, long[][] timestamps, float[][] prices, float[] currentPrices) {
+        if (stockIds.length != timestamps.length || stockIds.length != prices.length) {
+            throw new IllegalArgumentException();
+        }
+        if (currentPrices != null && currentPrices.length != stockIds.length) {
+            throw new IllegalArgumentException();
+        }
+        Stock[] stocks = new Stock[stockIds.length];
+        IntStream.range(0, stockIds.length).parallel().forEach(i -> stocks[i] = loadStock(stockIds[i], timestamps[i], prices[i]));
+        if (currentPrices != null) {
+            for (int i = 0; i < stocks.length; i++) {
+                stocks[i].currentPrice = currentPrices[i];
+            }
+        }
+
+        // the keys of stockIDTree are sorted by stockId and the keys of priceTree by PriceKey
+        Stock[] byStockId = stocks.clone();
+        Arrays.sort(byStockId, (stock1, stock2) -> stock1.stockID.compareTo(stock2.stockID));
+        List<String> stockIdKeys = new ArrayList<>(stocks.length);
+        for (Stock stock : byStockId) {
+            stockIdKeys.add(stock.stockID);
+        }
+        PriceKey[] priceKeys = new PriceKey[stocks.length];
+        for (int i = 0; i < stocks.length; i++) {
+            priceKeys[i] = new PriceKey(stocks[i].currentPrice, stocks[i].stockID);
+            stocks[i].priceKey = priceKeys[i];
+        }
+        Arrays.sort(priceKeys);
+        List<String> priceValues = new ArrayList<>(stocks.length);
+        for (PriceKey priceKey : priceKeys) {
+            priceValues.add(priceKey.getStockId());
+        }
+
+        // the index is built in bulk, and throws if two stocks have the same stockId
+        SortedIndex<String, Stock> newStockIDTree = stockIdIndexBackend.build(STRING_SENTINEL_MIN, STRING_SENTINEL_MAX,
+                stockIdKeys, Arrays.asList(byStockId));
+        this.priceTree = priceIndexBackend.build(PriceKey.SENTINEL_MIN, PriceKey.SENTINEL_MAX, Arrays.asList(priceKeys), priceValues);
+        StockIndex newStockIndex = new StockIndex(stocks.length);
+        for (Stock stock : stocks) {
+            newStockIndex.put(stock.stockID, stock);
+        }
+        this.stockIDTree = newStockIDTree;
+        this.stockIndex = newStockIndex;
+        removedStocks.clear();
+        removedPrices = priceIndexBackend.create(PriceKey.SENTINEL_MIN, PriceKey.SENTINEL_MAX);
+        clock = Long.MIN_VALUE;
+        for (long[] stockTimestamps : timestamps) {
+            clock = Math.max(clock, stockTimestamps[stockTimestamps.length - 1]);
+        }
+        if (rangeCache != null) {
+            rangeCache.clear();
+        }
+        if (priceVersions != null) {
+            priceVersions.reset(clock, priceKeys);
+        }
+        recountPriceBands();
+        if (journal != null) { // journaled event by event, see loadEvent
+            journal.init();
+            for (int i = 0; i < stockIds.length; i++) {
+                for (int j = 0; j < timestamps[i].length; j++) {
+                    journal.loadEvent(stockIds[i], timestamps[i][j], prices[i][j]);
+                }
+            }
+        }
+    }
+
+    // Build one stock and its history tree. The events may be any history addStock, updateStock and
+    // compactHistories leave behind: the first event is not always the add, since an update may be dated before it
+    // (from timestamp 0 on), events may share a timestamp, and a checkpoint may be negative. So the checks are the
+    // checks every event passes - a timestamp that is not negative and a price difference that is not 0
+    private Stock loadStock(String stockId, long[] timestamps, float[] prices) {
+        if (timestamps.length == 0 || timestamps.length != prices.length) {
+            throw new IllegalArgumentException();
+        }
+        if (timestamps[0] < 0) {
+            throw new IllegalArgumentException();
+        }
+        float currentPrice = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (prices[i] == 0) {
+                throw new IllegalArgumentException();
+            }
+            currentPrice = currentPrice + prices[i];
+        }
+        // the history is built from the sorted events, and throws if the timestamps are not sorted
+        StockHistory updateStockEvents = historyBackend.build(timestamps, prices);
+        return new Stock(stockId, updateStockEvents, currentPrice);
+    }
+
+    // Write every stock, its current price and its history to a snapshot file
+    public void writeSnapshot(Path path) throws IOException {
+        Stock[] stocks = new Stock[stockIndex.size()];
+        SortedIndex.Cursor<String, Stock> cursor = stockIDTree.select(1);
+        for (int i = 0; i < stocks.length; cursor.next()) {
+            if (!isRemoved(cursor.key())) {
+                stocks[i++] = cursor.value();
+            }
+        }
+        Snapshot.write(path, stocks);
+    }
+
+    // Replace the stocks with the stocks of a snapshot file - the trees are built from the sorted stocks and events
+    // of the file, like loadStocks, without replaying the events
+    public void readSnapshot(Path path) throws IOException {
+        Snapshot snapshot = Snapshot.read(path);
+        loadStocks(snapshot.stockIds, snapshot.timestamps, snapshot.prices, snapshot.currentPrices);
+    }
+
     // 2. Add a new stock
     public void addStock(String stockId, long timestamp, Float price) {
         if(timestamp <= 0) { //ensures timestamp is positive
             throw new IllegalArgumentException();
         }
-        if (stockIDTree.search(stockIDTree.root, stockId) != null) {  // make sure this stock is not already exist in the tree
+        if (stockIndex.get(stockId) != null) {  // make sure this stock is not already exist in the tree
             throw new IllegalArgumentException();
         } else if (price <= 0){
             throw new IllegalArgumentException();
         }
         else {
-            //create new Node in stockIDTree, create new stock and make it the node value
-            // update the inner tree of the new stock and update current price
-            // add the new node to the inner tree of the specific stock - happens in the constructor of stock automatically
-            Stock newStock = new Stock(stockId, price, timestamp);
-            Node<String, Stock> nodeOuterTree = new Node<String, Stock>(stockId, newStock);
-            stockIDTree.insert(nodeOuterTree);
-            // create new node in the priceTree - make sure it holds the current price as key and stockID as value
-            Pair<Float,String> pair = new Pair<>(price, stockId);
-            Node<Pair<Float,String>, String> node = new Node<>(pair, stockId);
-            priceTree.insert(node);
+            insertStock(stockId, timestamp, price);
+            if (journal != null) {
+                journal.addStock(stockId, timestamp, price);
+            }
         }
     }
 
+    // An event of a stock of loadStocks, replayed from the journal: the first event of the stock adds it, with the
+    // checks of loadStock instead of the checks of addStock, and the next events are updates
+    void loadEvent(String stockId, long timestamp, float priceDifference) {
+        if (stockIndex.get(stockId) != null) {
+            updateStock(stockId, timestamp, priceDifference);
+            return;
+        }
+        if (timestamp < 0 || priceDifference == 0) {
+            throw new IllegalArgumentException();
+        }
+        insertStock(stockId, timestamp, priceDifference);
+    }
+
+    // Add a stock that is not in the manager, with its first event
+    private void insertStock(String stockId, long timestamp, float price) {
+        Stock removedStock = removedStocks.remove(stockId);
+        if (removedStock != null) { // the stock was removed lazily - its old entries go first
+            purgeStock(removedStock);
+        }
+        //create new stock and add it to the stockIDTree with its stockId as the key
+        // update the inner tree of the new stock and update current price
+        // add the new node to the inner tree of the specific stock - happens in the constructor of stock automatically
+        Stock newStock = new Stock(stockId, price, timestamp, historyBackend);
+        stockIDTree.insert(stockId, newStock);
+        stockIndex.put(stockId, newStock);
+        // add the stock to the priceTree - make sure it holds the current price as key and stockID as value
+        newStock.priceKey = new PriceKey(price, stockId);
+        priceTree.insert(newStock.priceKey, stockId);
+        clock = Math.max(clock, timestamp);
+        priceChanged(stockId, Float.NaN, price);
+    }
+
     // 3. Remove a stock
     public void removeStock(String stockId) {
-        // Call to search function to find the node with specific stockId we want to remove
-        Node<String, Stock> deleteStock = stockIDTree.search(stockIDTree.root, stockId);
+        Stock deleteStock = stockIndex.remove(stockId);
         if (deleteStock == null) {
             throw new IllegalArgumentException();
         }
-        Float deleteStockCurrentPrice = deleteStock.value.getCurrentPrice();
-        String deleteStockStockId = deleteStock.getKey();
-        // Remove the Stock with the inner Tree updateStockEvents
-        deleteStock.value = null;
-        // Call to remove function to delete a specific stock - in stockId tree
-        this.stockIDTree.delete(deleteStock);
-        // After deleting the SockId the connected updateStockEvents tree will delete with the garbage collector
-        // Call to search function to find the node with a specific price and StockId
-        Pair<Float, String> priceKey = new Pair<>(deleteStockCurrentPrice, deleteStockStockId);
-        Node<Pair<Float, String>, String> deletePrice = priceTree.search(priceTree.root, priceKey);
-        // Call to remove function with Price tree and add check to remove only the Key with a specific Value - same as remove stock
-        if (deletePrice != null) {
-            priceTree.delete(deletePrice);
+        if (lazyRemoval) { // a tombstone - the queries skip the stock from now on, and purgeRemovedStocks deletes it
+            removedStocks.put(stockId, deleteStock);
+            removedPrices.insert(deleteStock.priceKey, stockId);
+        } else {
+            // Remove the stock from the stockIDTree - its updateStockEvents history is deleted with it by the garbage collector
+            stockIDTree.delete(stockId);
+            // Remove the key with the current price and the stockId of the stock from the priceTree
+            priceTree.delete(deleteStock.priceKey);
+        }
+        priceChanged(stockId, deleteStock.currentPrice, Float.NaN);
+        if (journal != null) {
+            journal.removeStock(stockId);
         }
     }
 
+    // Remove stocks lazily (or not, the default): removeStock only takes the stock out of the stockIndex and leaves
+    // a tombstone, so the stock is gone from every query at once, and the deletes from the stockIDTree and the
+    // priceTree (with their borrow and merge cascades) are left to purgeRemovedStocks, which a RemovalPurge thread
+    // calls in slices. Adding a stock with the stockId of a tombstone purges the tombstone first.
+    // Turning it off purges all the tombstones
+    public void setLazyRemoval(boolean lazy) {
+        lazyRemoval = lazy;
+        if (!lazy) {
+            purgeRemovedStocks(Integer.MAX_VALUE);
+        }
+    }
+
+    // Delete at most budget stocks that were removed lazily from the trees, the oldest first - returns how many
+    // were deleted. The history of a purged stock goes with it, to the garbage collector
+    public int purgeRemovedStocks(int budget) {
+        if (budget < 1) {
+            throw new IllegalArgumentException();
+        }
+        int purged = 0;
+        Iterator<Stock> iterator = removedStocks.values().iterator();
+        while (iterator.hasNext() && purged < budget) {
+            Stock stock = iterator.next();
+            iterator.remove();
+            purgeStock(stock);
+            purged++;
+        }
+        return purged;
+    }
+
+    // The number of stocks removed lazily and not purged yet
+    public int getRemovedStocksPending() {
+        return removedStocks.size();
+    }
+
+    private void purgeStock(Stock stock) {
+        stockIDTree.delete(stock.stockID);
+        priceTree.delete(stock.priceKey);
+        removedPrices.delete(stock.priceKey);
+    }
+
+    // The stock was removed lazily and is still in the trees
+    private boolean isRemoved(String stockId) {
+        return !removedStocks.isEmpty() && removedStocks.containsKey(stockId);
+    }
+
     // 4. Update a stock price
     public void updateStock(String stockId, long timestamp, Float priceDifference) {
         if(timestamp < 0) { //ensures timestamp is not negative
@@ -80,136 +326,347 @@ public class StockManager {
         if(priceDifference == 0) { // ensure priceDifference is not 0
             throw new IllegalArgumentException();
         }
-        Node<String, Stock> nodeNeededToUpdate = stockIDTree.search(stockIDTree.root, stockId);
-        if(nodeNeededToUpdate == null) {
+        Stock stockNeededToUpdate = stockIndex.get(stockId);
+        if(stockNeededToUpdate == null) {
             throw new IllegalArgumentException();
         }
         //  calculate the updates price
-        float prevPrice = (nodeNeededToUpdate).value.currentPrice;
+        float prevPrice = stockNeededToUpdate.currentPrice;
         float newPrice = prevPrice + priceDifference;
-        nodeNeededToUpdate.value.currentPrice = newPrice; //  update the currentPrice property of the stock
+        stockNeededToUpdate.currentPrice = newPrice; //  update the currentPrice property of the stock
         //  adding the priceDifference as a new node into the inner tree of the specific stock (using timestamp and priceDifference)
-        Node<Long, Float> newUpdate = new Node<>(timestamp, priceDifference);
-        nodeNeededToUpdate.value.updateStockEvents.insert(newUpdate);
+        stockNeededToUpdate.updateStockEvents.add(timestamp, priceDifference);
+        clock = Math.max(clock, timestamp);
 
         //  update the price of the stock in the priceTree by remove and insert it to the priceTree
-        Pair<Float, String> complexKey = new Pair<>(prevPrice, stockId);
-        Node<Pair<Float, String>, String> priceNodeToDelete = priceTree.search(priceTree.root, complexKey);
+        movePrice(stockNeededToUpdate, newPrice);
+        if (journal != null) {
+            journal.updateStock(stockId, timestamp, priceDifference);
+        }
+    }
+
+    // Move stock in the priceTree to newPrice. The stock has two keys and only one of them is in the priceTree,
+    // so the other one gets the new price and takes its place - a move allocates no key (the index reuses its nodes too)
+    private void movePrice(Stock stock, float newPrice) {
+        PriceKey keyUpdated = stock.spareKey;
+        if (keyUpdated == null) {
+            keyUpdated = new PriceKey(newPrice, stock.stockID);
+        } else {
+            keyUpdated.setPrice(newPrice);
+        }
+        priceTree.delete(stock.priceKey); // remove the key only from the priceTree
+        priceTree.insert(keyUpdated, stock.stockID); // insert the updated key to the priceTree
+        PriceKey prevKey = stock.priceKey;
+        stock.spareKey = prevKey;
+        stock.priceKey = keyUpdated;
+        priceChanged(stock.stockID, prevKey.getPrice(), newPrice);
+    }
+
+    // The price of stockId moved from prevPrice to newPrice - NaN for the price of a stock that was not in the
+    // manager before the change (addStock) or is not in it after (removeStock). The cached ranges the move touched
+    // are dropped, only the bands whose bounds the price crossed change, and their listeners are told,
+    // and the price versions get a version stamped with the clock
+    private void priceChanged(String stockId, float prevPrice, float newPrice) {
+        if (rangeCache != null) {
+            rangeCache.priceChanged(prevPrice, newPrice);
+        }
+        if (priceVersions != null) {
+            priceVersions.priceChanged(clock, stockId, prevPrice, newPrice);
+        }
+        for (int i = 0; i < priceBands.size(); i++) { // by index - an iterator would be allocated in every update
+            PriceBand band = priceBands.get(i);
+            boolean wasIn = band.contains(prevPrice);
+            boolean isIn = band.contains(newPrice);
+            if (wasIn && !isIn) {
+                band.exit(stockId, prevPrice);
+            } else if (!wasIn && isIn) {
+                band.enter(stockId, newPrice);
+            }
+        }
+    }
 
-        priceTree.delete(priceNodeToDelete); // remove the node only from the priceTree
-        Pair<Float, String> pairUpdated = new Pair<>(newPrice, stockId);
-        Node<Pair<Float, String>, String> updatedNode = new Node<>(pairUpdated, stockId); // create the updated node we want to insert
-        priceTree.insert(updatedNode); // insert the updates node to the priceTree
+    // Apply a batch of updates - each stock in the batch is searched once and moved in the priceTree once,
+    // no matter how many updates of it the batch holds
+    public void applyUpdates(StockUpdate[] updates) {
+        StockUpdate[] sorted = updates.clone();
+        // the sort is stable, so the updates of every stock keep their order in the batch
+        Arrays.sort(sorted, (update1, update2) -> update1.stockId.compareTo(update2.stockId));
+
+        // check the whole batch first, so an illegal update does not leave half of the batch applied
+        Stock[] stocks = new Stock[sorted.length]; // the stock of every update in sorted
+        long batchClock = clock; // the whole batch gets one version of the prices, not a version for every stock
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i].timestamp < 0 || sorted[i].priceDifference == 0) {
+                throw new IllegalArgumentException();
+            }
+            batchClock = Math.max(batchClock, sorted[i].timestamp);
+            if (i > 0 && sorted[i].stockId.equals(sorted[i - 1].stockId)) {
+                stocks[i] = stocks[i - 1];
+            } else {
+                stocks[i] = stockIndex.get(sorted[i].stockId);
+                if (stocks[i] == null) {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+
+        clock = batchClock;
+        int i = 0;
+        while (i < sorted.length) {
+            Stock stock = stocks[i];
+            float prevPrice = stock.currentPrice;
+            float newPrice = prevPrice;
+            // add all the updates of this stock to its inner tree, the price is summed in the same order as updateStock does
+            while (i < sorted.length && stocks[i] == stock) {
+                newPrice = newPrice + sorted[i].priceDifference;
+                stock.updateStockEvents.add(sorted[i].timestamp, sorted[i].priceDifference);
+                if (journal != null) {
+                    journal.updateStock(sorted[i].stockId, sorted[i].timestamp, sorted[i].priceDifference);
+                }
+                i++;
+            }
+            stock.currentPrice = newPrice;
+            if (Float.compare(prevPrice, newPrice) != 0) { // the updates of the batch may cancel each other
+                movePrice(stock, newPrice);
+            }
+        }
     }
 
     // 5. Get the current price of a stock
     public Float getStockPrice(String stockId) {
-        // search the stockId in stockIDTree
-        Node<String, Stock> node = stockIDTree.search(stockIDTree.root, stockId);
-        if (node != null) { // the stock doesnt exist
-            Float currentPrice = node.value.getCurrentPrice();
+        // search the stockId in the stockIndex
+        Stock stock = stockIndex.get(stockId);
+        if (stock != null) { // the stock doesnt exist
+            Float currentPrice = stock.getCurrentPrice();
             return currentPrice; // return the current price
         } else {
             throw new IllegalArgumentException();
         }
     }
 
+    // Get the price a stock had at a past timestamp - the sum of the events of its history up to timestamp, up to
+    // float rounding: the sum is taken in double, and the current price was summed in float one event at a time.
+    // From the last event on it is the current price, the same as getStockPrice.
+    // The history keeps the sum of every subtree, so this takes O(log n) and not a walk over the whole history
+    public Float getStockPriceAt(String stockId, long timestamp) {
+        Stock stock = stockIndex.get(stockId);
+        if (stock == null) {
+            throw new IllegalArgumentException();
+        }
+        StockHistory updateStockEvents = stock.updateStockEvents;
+        if (timestamp < updateStockEvents.firstTimestamp()) { // the stock was not added yet
+            throw new IllegalArgumentException();
+        }
+        return (float) priceAt(stock, timestamp, updateStockEvents.lastTimestamp());
+    }
+
+    // The price of the stock at timestamp - its current price from the last event of its history on
+    private static double priceAt(Stock stock, long timestamp, long lastTimestamp) {
+        return (timestamp >= lastTimestamp) ? stock.currentPrice : stock.updateStockEvents.priceAt(timestamp);
+    }
+
+    // Get the candle chart of a stock over [from, to) - a candle for every window of width timestamps
+    // [from, from + width), [from + width, from + 2 * width)..., and the last window ends at to.
+    // The windows before the first event of the history have no candle, so the series starts at the window of that event.
+    // The prices are those of getStockPriceAt, up to float rounding, so the close of the last candle is the current price.
+    // The history keeps the extreme prefix sums of every subtree, so a candle is two priceAt and one priceExtremes
+    // of the history - O(log n) a candle, and not a walk over the events of its window
+    public Candle[] getCandles(String stockId, long from, long to, long width) {
+        Stock stock = stockIndex.get(stockId);
+        if (stock == null || to <= from || width <= 0) {
+            throw new IllegalArgumentException();
+        }
+        StockHistory updateStockEvents = stock.updateStockEvents;
+        long added = updateStockEvents.firstTimestamp();
+        long last = updateStockEvents.lastTimestamp();
+        if (to <= added) {
+            return new Candle[0];
+        }
+        // to - from and added - from are positive, so they are right as unsigned even if the subtraction overflows
+        long windows = Long.divideUnsigned(to - from - 1, width) + 1;
+        long firstWindow = (added <= from) ? 0 : Long.divideUnsigned(added - from, width);
+        if (windows - firstWindow > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many candles");
+        }
+        Candle[] candles = new Candle[(int) (windows - firstWindow)];
+        double[] extremes = new double[2];
+        for (int i = 0; i < candles.length; i++) {
+            long start = from + (firstWindow + i) * width;
+            long end = (i == candles.length - 1) ? to : start + width;
+            long openAt = Math.max(start, added);
+            double open = priceAt(stock, openAt, last);
+            double close = priceAt(stock, end - 1, last);
+            double high = Math.max(open, close), low = Math.min(open, close); // the close may round apart from the sums
+            updateStockEvents.priceExtremes(openAt + 1, end - 1, extremes); // NaN - no event after the open
+            if (!Double.isNaN(extremes[0])) {
+                low = Math.min(low, extremes[0]);
+                high = Math.max(high, extremes[1]);
+            }
+            candles[i] = new Candle(start, end, (float) open, (float) high, (float) low, (float) close);
+        }
+        return candles;
+    }
+
     // 6. Remove a specific timestamp from a stock's history
     public void removeStockTimestamp(String stockId, long timestamp) {
-        // search the stockId in stockIDTree
-        Node<String, Stock> StockId = stockIDTree.search(stockIDTree.root, stockId);
-        if (StockId == null) { // the stock doesnt exist in the stockID tree
+        // search the stockId in the stockIndex
+        Stock stock = stockIndex.get(stockId);
+        if (stock == null) { // the stock doesnt exist
             throw new IllegalArgumentException();
         }
-        //ensure the timestamp exists in the updateEventsTree of the specific Stock
-        Node<Long, Float> timeStampEvent = StockId.value.updateStockEvents.search(StockId.value.updateStockEvents.root, timestamp);
-        if (timeStampEvent == null) {
+        //ensure the timestamp exists in the history of the specific Stock
+        StockHistory updateStockEvents = stock.updateStockEvents;
+        if (!updateStockEvents.contains(timestamp)) {
             throw new IllegalArgumentException();
         }
 
-        // make sure the timestamp is not the one of the first adding event
-        Node<String, Stock> node = stockIDTree.search(stockIDTree.root, stockId);
-        if(timestamp == node.value.updateStockEvents.minimum().key) {
+        // make sure the timestamp is not the one of the first adding event, nor the one of the checkpoint that
+        // compactHistories folded the oldest events into - it holds their price even if it is not first any more
+        if(timestamp == updateStockEvents.firstTimestamp() || timestamp == updateStockEvents.checkpointTimestamp()) {
             throw new IllegalArgumentException();
         }
 
-        Float prevPrice = StockId.value.getCurrentPrice();
-        // if the stockId exist, then go to stockId.value.updateStockEvents there search for a specific date
-        Node<Long, Float> Timestamp = StockId.value.updateStockEvents.search(StockId.value.updateStockEvents.root, timestamp);
+        // delete the event and remove its price difference from the current price
+        float price = updateStockEvents.remove(timestamp);
+        stock.currentPrice = stock.currentPrice - price;
 
-        // price we need to remove
-        Float price = Timestamp.value;
-        StockId.value.currentPrice = StockId.value.currentPrice - price;
+        // Change price in proceTree
+        movePrice(stock, stock.currentPrice);
+        if (journal != null) {
+            journal.removeStockTimestamp(stockId, timestamp);
+        }
+    }
 
-        // delete the node if found
-        if (Timestamp == null) {
+    // One slice of the retention of the histories: fold the events older than cutoff into the checkpoint of their
+    // history (see StockHistory.compact), for the stocks in stockId order from where the last slice stopped,
+    // until budget events were removed or stocks were visited. Returns true if the slice reached the last stock -
+    // the next slice starts a new pass from the first stock.
+    // Prices do not change, and removeStockTimestamp of a folded event throws as for any missing event, and so does
+    // removeStockTimestamp of the checkpoint (see StockHistory.checkpointTimestamp).
+    // The journal does not record the fold, so a manager recovered from the journal is not the same as this one:
+    // it keeps every folded event, its removeStockTimestamp accepts the timestamps this one rejects, and its prices
+    // differ from these after such a removal.
+    // A snapshot keeps the checkpoint as an event, but not which event is the checkpoint
+    public boolean compactHistories(long cutoff, int budget) {
+        if (budget < 1) {
             throw new IllegalArgumentException();
         }
-        StockId.value.updateStockEvents.delete(Timestamp);
-
-        // Change price in proceTree
-        Pair<Float, String> complexKey = new Pair<>(prevPrice, stockId);
-        Node<Pair<Float, String>, String> priceNodeToDelete = priceTree.search(priceTree.root, complexKey);
-        this.priceTree.delete(priceNodeToDelete);
+        int first = (compactionPosition == null) ? 1 : stockIDTree.countLessOrEqual(compactionPosition) + 1;
+        SortedIndex.Cursor<String, Stock> cursor = stockIDTree.select(first);
+        int work = 0;
+        while (cursor.valid() && work < budget) {
+            StockHistory history = cursor.value().updateStockEvents;
+            int size = history.size();
+            boolean more = !isRemoved(cursor.key()) && history.compact(cutoff, budget - work);
+            work += 1 + size - history.size();
+            if (more) { // the stock has more to fold - the next slice starts from it again
+                return false;
+            }
+            compactionPosition = cursor.key();
+            cursor.next();
+        }
+        if (cursor.valid()) {
+            return false;
+        }
+        compactionPosition = null;
+        return true;
+    }
 
+    // The counters of the work the priceTree and the stockIDTree did in inserts and deletes
+    public TreeStats getPriceTreeStats() {
+        return priceTree.stats();
+    }
 
-        Pair<Float, String> complexKey2 = new Pair<>(StockId.value.currentPrice , stockId);
-        Node<Pair<Float, String>, String> priceNodeToInsert= new Node<>(complexKey2, stockId);
-        this.priceTree.insert(priceNodeToInsert);
+    public TreeStats getStockIDTreeStats() {
+        return stockIDTree.stats();
+    }
 
+    // Check the structure of the trees and that they agree with each other - every stock of the stockIDTree is in the
+    // priceTree at its current price, and in the stockIndex or else a tombstone (see setLazyRemoval), and nothing else
+    // is. Throws IllegalStateException if not. O(n), for stress tests
+    public void checkInvariants() {
+        priceTree.checkInvariants();
+        stockIDTree.checkInvariants();
+        removedPrices.checkInvariants();
+        int stocks = stockIDTree.size();
+        if (priceTree.size() != stocks || stockIndex.size() + removedStocks.size() != stocks
+                || removedPrices.size() != removedStocks.size()) {
+            throw new IllegalStateException("the trees have different sizes");
+        }
+        for (SortedIndex.Cursor<String, Stock> cursor = stockIDTree.select(1); cursor.valid(); cursor.next()) {
+            Stock stock = cursor.value();
+            boolean found = (removedStocks.get(stock.stockID) == stock)
+                    ? stockIndex.get(stock.stockID) == null && removedPrices.search(stock.priceKey) != null
+                    : stockIndex.get(stock.stockID) == stock;
+            if (!stock.stockID.equals(cursor.key()) || !found) {
+                throw new IllegalStateException("stock " + cursor.key() + " is not in the stockIndex or the tombstones");
+            }
+            if (Float.compare(stock.priceKey.getPrice(), stock.currentPrice) != 0
+                    || !stock.stockID.equals(priceTree.search(stock.priceKey))) {
+                throw new IllegalStateException("stock " + stock.stockID + " is not in the priceTree at its price");
+            }
+        }
     }
 
+    // The bounds of the range queries, reused by all the queries of a thread - a pair for every thread,
+    // because the readers of ConcurrentStockManager query at the same time
+    private static final ThreadLocal<PriceKey[]> RANGE_BOUNDS =
+            ThreadLocal.withInitial(() -> new PriceKey[] {new PriceKey(0, null), new PriceKey(0, null)});
+
     // 7. Get the amount of stocks in a given price range
     public int getAmountStocksInPriceRange(Float price1, Float price2) {
-        int rightBoundNum, leftBoundNum;
         if (price2 < price1) {
             throw new IllegalArgumentException();
         }
+        RangeCache cache = rangeCache;
+        if (cache == null) {
+            return countInPriceRange(price1, price2);
+        }
+        int amount = cache.count(price1, price2);
+        if (amount < 0) {
+            amount = countInPriceRange(price1, price2);
+            cache.putCount(price1, price2, amount);
+        }
+        return amount;
+    }
 
-        //find the left bound
-        // search if price1 exists in the tree
-        Pair<Float, String> complexKey1 = new Pair<>(price1, null);
-        Node<Pair<Float, String>, String> left = priceTree.search(priceTree.root, complexKey1);
-        if(left == null) { //price 1 is not in the tree
-            // add new node with the key of price1, then run successor on it in order to find the smallest node that is bigger than price1
-            Node<Pair<Float, String>, String> nodeToAdd = new Node<>(complexKey1, null);
-            priceTree.insert(nodeToAdd);
-            Node<Pair<Float, String>, String> leftBound = priceTree.successor(nodeToAdd); //saving the right bound for the calculation
-            if(leftBound != null) {
-                leftBoundNum = priceTree.rank(leftBound) - 1;
-                priceTree.delete(nodeToAdd);
-            } else {
-                return 0; //case that both price1 and price2 are bigger than all of the prices in the tree
-            }
+    private int countInPriceRange(float price1, float price2) {
+        // a key without stockId compares equal to every key with the same price, so the two counts
+        // are the amount of stocks cheaper than price1 and the amount of stocks that cost at most price2
+        PriceKey[] bounds = RANGE_BOUNDS.get();
+        bounds[0].setPrice(price1);
+        bounds[1].setPrice(price2);
+        int belowRange = countLess(bounds[0]);
+        int upToPrice2 = countLessOrEqual(bounds[1]);
+        return upToPrice2 - belowRange;
+    }
 
-        } else { //price1 is in the tree
-            leftBoundNum = priceTree.rank(left);
-        }
-
-        // find the right bound
-        // search if price2 exists in the tree
-        Pair<Float, String> complexKey2 = new Pair<>(price2, null);
-        Node<Pair<Float, String>, String> right = priceTree.search(priceTree.root, complexKey2);
-        if(right == null) { //price 2 is not in the tree
-            // add new node with the key of price2, then use sister to find the node that is small but closer to price2
-            Node<Pair<Float, String>, String> nodeToAdd2 = new Node<>(complexKey2, null);
-            priceTree.insert(nodeToAdd2);
-            nodeToAdd2.setSister();
-            Node<Pair<Float, String>, String> rightBound = nodeToAdd2.sister; //saving the right bound for the calculation
-            rightBoundNum = priceTree.rank(rightBound);
-            priceTree.delete(nodeToAdd2);
-        } else {
-            Node<Pair<Float, String>, String> nodeToAdd2 = new Node<>(complexKey2, null);
-            priceTree.insert(nodeToAdd2);
-            Node<Pair<Float, String>, String> rightBound = nodeToAdd2.sister; //saving the right bound for the calculation
-            rightBoundNum = priceTree.rank(rightBound);
-            priceTree.delete(nodeToAdd2);
-        }
+    // The counts and the positions of the priceTree without the tombstones of the stocks removed lazily
+    private int countLess(PriceKey key) {
+        int count = priceTree.countLess(key);
+        return removedStocks.isEmpty() ? count : count - removedPrices.countLess(key);
+    }
 
-        if(rightBoundNum == 1 && leftBoundNum == 1 && right == null) {
-            return 0;
+    private int countLessOrEqual(PriceKey key) {
+        int count = priceTree.countLessOrEqual(key);
+        return removedStocks.isEmpty() ? count : count - removedPrices.countLessOrEqual(key);
+    }
+
+    // The position in the priceTree of the k-th stock that is not a tombstone, k in [1, getAmountStocks()].
+    // Position p holds the k-th such stock if k + (the tombstones up to position p) = p, so p is moved up by the
+    // tombstones it passed until it stops - every step passes at least one tombstone
+    private int position(int k) {
+        if (removedStocks.isEmpty()) {
+            return k;
+        }
+        int p = k;
+        while (true) {
+            int next = k + removedPrices.countLessOrEqual(priceTree.select(p).key());
+            if (next == p) {
+                return p;
+            }
+            p = next;
         }
-        return (rightBoundNum - leftBoundNum + 1);
     }
 
     // 8. Get a list of stock IDs within a given price range
@@ -217,57 +674,213 @@ public class StockManager {
         if (price2 < price1) {
             throw new IllegalArgumentException();
         }
-
-        int amountInPrice = getAmountStocksInPriceRange(price1, price2);
-        if (amountInPrice == 0){
-            String[] returnArr = new String[0];
-            return returnArr;
+        RangeCache cache = rangeCache;
+        if (cache == null) {
+            return stocksInPriceRange(price1, price2);
+        }
+        String[] returnArr = cache.stockIds(price1, price2);
+        if (returnArr == null) {
+            returnArr = stocksInPriceRange(price1, price2);
+            cache.putStockIds(price1, price2, returnArr);
         }
+        return returnArr;
+    }
 
+    private String[] stocksInPriceRange(float price1, float price2) {
+        int amountInPrice = countInPriceRange(price1, price2);
         String[] returnArr = new String[amountInPrice];
-
-        // case 1 - priceTree contain price2
-        Pair<Float, String> complexKey = new Pair<>(price2, null);
-        Node<Pair<Float, String>, String> price2Node = priceTree.search(priceTree.root, complexKey);
-
-        // case 2 - priceTree does not contain price2, then call successor to find the node with bigger value
-        if (price2Node == null) { // the stock doesnt exist
-            Node<Pair<Float, String>, String> tempNode = new Node<>(new Pair<>(price2, null), null); // create the updated node we want to insert
-            priceTree.insert(tempNode);
-            tempNode.setSister();
-            Node<Pair<Float, String>, String> biggestInRange = tempNode.sister;
-            priceTree.delete(tempNode);
-            returnArr = getSistersArr(biggestInRange, price1, price2);
-            return returnArr;
-        }
-
-        Node<Pair<Float, String>, String> tempNode = new Node<>(new Pair<>(price2, null), null); // create the updated node we want to insert
-        priceTree.insert(tempNode);
-        Node<Pair<Float, String>, String> biggerThenPrice2 = priceTree.successor(tempNode);
-        priceTree.delete(tempNode);
-        returnArr = getSistersArr(biggerThenPrice2, price1, price2);
+        // start from the cheapest stock in the range and walk up the keys in ascending order
+        SortedIndex.Cursor<PriceKey, String> cursor = priceTree.select(priceTree.countLess(RANGE_BOUNDS.get()[0]) + 1);
+        for (int i = 0; i < amountInPrice; cursor.next()) {
+            if (!isRemoved(cursor.value())) {
+                returnArr[i++] = cursor.value();
+            }
+        }
         return returnArr;
     }
 
-    public String[] getSistersArr(Node<Pair<Float, String>, String> node, Float price1, Float price2) {
-        int amountInPrice = getAmountStocksInPriceRange(price1, price2);
-        String[] returnArr = new String[amountInPrice];
-        int i = amountInPrice - 1;
+    // Keep the results of the last capacity different range queries (0 - keep none, the default).
+    // A repeated query is answered from the cache, and a change of a price drops only the results it changed
+    public void setRangeCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        rangeCache = (capacity == 0) ? null : new RangeCache(capacity);
+    }
 
-        // go to sister of node until you reach a node with a price less than price1
-        while (node != null && i >= 0) {
-            Float currentPrice = node.getKey().getKey(); // extract the Float part of the Pair
-            if (currentPrice < price1) {
-                break;
-            }
-            if (currentPrice <= price2) {
-                returnArr[i] = node.getKey().getValue(); // extract the String part of the Pair
-                i--;
+    // The cache with its hit, miss and eviction counters, or null if there is no cache
+    public RangeCache getRangeCache() {
+        return rangeCache;
+    }
+
+    // Keep the versions of the prices of the last retention timestamps (0 - keep none, the default), for
+    // getAmountStocksInPriceRangeAt and getStocksInPriceRangeAt. The versions start from the prices of now, and
+    // every change of a price from now on is a new version (see VersionedPriceIndex), which allocates O(log n) nodes
+    public void setPriceVersionRetention(long retention) {
+        if (retention < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (retention == 0) {
+            priceVersions = null;
+        } else if (priceVersions != null) {
+            priceVersions.setRetention(retention);
+        } else {
+            PriceKey[] priceKeys = new PriceKey[getAmountStocks()];
+            SortedIndex.Cursor<PriceKey, String> cursor = priceTree.select(1);
+            for (int i = 0; i < priceKeys.length; cursor.next()) {
+                if (!isRemoved(cursor.value())) {
+                    priceKeys[i++] = cursor.key();
+                }
             }
-            node = node.sister; // move to the next sister node
+            priceVersions = new VersionedPriceIndex(retention);
+            priceVersions.reset(clock, priceKeys);
         }
+    }
 
-        return returnArr;
+    // The price versions, or null if they are not kept
+    public VersionedPriceIndex getPriceVersions() {
+        return priceVersions;
+    }
+
+    // getAmountStocksInPriceRange as of timestamp - throws if the versions are not kept,
+    // or timestamp is older than the retention window - O(log n)
+    public int getAmountStocksInPriceRangeAt(Float price1, Float price2, long timestamp) {
+        if (price2 < price1) {
+            throw new IllegalArgumentException();
+        }
+        if (priceVersions == null) {
+            throw new IllegalStateException("the price versions are not kept");
+        }
+        return priceVersions.count(timestamp, price1, price2);
+    }
+
+    // getStocksInPriceRange as of timestamp, like getAmountStocksInPriceRangeAt - O(log n + k)
+    public String[] getStocksInPriceRangeAt(Float price1, Float price2, long timestamp) {
+        if (price2 < price1) {
+            throw new IllegalArgumentException();
+        }
+        if (priceVersions == null) {
+            throw new IllegalStateException("the price versions are not kept");
+        }
+        return priceVersions.stockIds(timestamp, price1, price2);
+    }
+
+    // A standing range query of [price1, price2] - its count (and its members, if keepMembers) is kept up to date by
+    // every change of a price, so reading it costs O(1). listener (may be null) is told about every stock that
+    // enters or exits the range. A bulk change (initStocks, loadStocks, readSnapshot) counts the band again
+    // without telling the listener. Every change of a price checks every band, so keep the bands few
+    public PriceBand subscribePriceBand(Float price1, Float price2, boolean keepMembers, PriceBand.Listener listener) {
+        if (price2 < price1) {
+            throw new IllegalArgumentException();
+        }
+        PriceBand band = new PriceBand(price1, price2, keepMembers, listener);
+        recountPriceBand(band);
+        priceBands.add(band);
+        return band;
+    }
+
+    // Stop updating band - throws if it is not a band of this manager
+    public void unsubscribePriceBand(PriceBand band) {
+        if (!priceBands.remove(band)) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private void recountPriceBands() {
+        for (PriceBand band : priceBands) {
+            recountPriceBand(band);
+        }
+    }
+
+    private void recountPriceBand(PriceBand band) {
+        String[] stockIds = band.keepsMembers() ? stocksInPriceRange(band.getLow(), band.getHigh()) : null;
+        band.recount(countInPriceRange(band.getLow(), band.getHigh()), stockIds);
+    }
+
+    // The number of stocks in the system
+    public int getAmountStocks() {
+        return priceTree.size() - removedStocks.size();
     }
-}
 
+    // The stock with the k-th lowest price (k = 1 - the cheapest) - O(log n) using the size of every subtree
+    public String getKthCheapestStock(int k) {
+        if (k < 1 || k > getAmountStocks()) {
+            throw new IllegalArgumentException();
+        }
+        return priceTree.select(position(k)).value();
+    }
+
+    // The stock with the k-th highest price (k = 1 - the most expensive)
+    public String getKthMostExpensiveStock(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException();
+        }
+        return getKthCheapestStock(getAmountStocks() - k + 1);
+    }
+
+    // The price that percentile percent of the stocks cost at most - the nearest rank percentile, percentile in [0, 100]
+    public Float getPricePercentile(double percentile) {
+        int amount = getAmountStocks();
+        if (percentile < 0 || percentile > 100 || amount == 0) {
+            throw new IllegalArgumentException();
+        }
+        int rank = Math.max(1, (int) Math.ceil(percentile / 100 * amount));
+        return priceTree.select(position(rank)).key().getPrice();
+    }
+
+    // The median price - the average of the two middle prices if the number of stocks is even
+    public Float getMedianPrice() {
+        int amount = getAmountStocks();
+        if (amount == 0) {
+            throw new IllegalArgumentException();
+        }
+        float lower = priceTree.select(position((amount + 1) / 2)).key().getPrice();
+        float upper = priceTree.select(position(amount / 2 + 1)).key().getPrice();
+        return (amount % 2 == 1) ? lower : (lower + upper) / 2;
+    }
+
+    // A lazy cursor over the stockIds with price in [price1, price2], in ascending or descending price order.
+    // The first offset stocks of the range are skipped and at most limit stocks are returned
+    public PriceRangeCursor getStocksInPriceRangeCursor(Float price1, Float price2, boolean ascending, int offset, int limit) {
+        if (price2 < price1 || offset < 0 || limit < 0) {
+            throw new IllegalArgumentException();
+        }
+        return new PriceRangeCursor(this, price1, price2, ascending, offset, limit);
+    }
+
+    // Fill the next page of cursor - the position of the next stock is counted again from the last key the cursor returned.
+    // The positions are counted without tombstones, and the walk skips them
+    void fillPage(PriceRangeCursor cursor) {
+        long first;     // the position of the next stock to return
+        long available; // the number of stocks of the range from first on, in the order of the cursor
+        if (cursor.ascending) {
+            first = (cursor.last == null) ? countLess(cursor.low) + 1L + cursor.skip : countLessOrEqual(cursor.last) + 1L;
+            available = countLessOrEqual(cursor.high) - first + 1;
+        } else {
+            first = (cursor.last == null) ? countLessOrEqual(cursor.high) - (long) cursor.skip : countLess(cursor.last);
+            available = first - countLess(cursor.low);
+        }
+        cursor.skip = 0;
+        int count = (int) Math.max(0, Math.min(available, Math.min(cursor.page.length, cursor.remaining)));
+        if (count > 0) {
+            SortedIndex.Cursor<PriceKey, String> position = priceTree.select(position((int) first));
+            PriceKey last = null;
+            for (int i = 0; i < count; ) {
+                if (!isRemoved(position.value())) {
+                    cursor.page[i++] = position.value();
+                    last = position.key();
+                }
+                if (cursor.ascending) {
+                    position.next();
+                } else {
+                    position.previous();
+                }
+            }
+            // a copy - the key in the priceTree is reused when the price of its stock moves
+            cursor.last = new PriceKey(last.getPrice(), last.getStockId());
+        }
+        cursor.pageSize = count;
+        cursor.remaining -= count;
+        cursor.exhausted = (count >= available);
+    }
+}
@@ -0,0 +1,12 @@
+// One price update event of a stock - the arguments of StockManager.updateStock
+public class StockUpdate {
+    public final String stockId;
+    public final long timestamp;
+    public final Float priceDifference;
+
+    public StockUpdate(String stockId, long timestamp, Float priceDifference) {
+        this.stockId = stockId;
+        this.timestamp = timestamp;
+        this.priceDifference = priceDifference;
+    }
+}
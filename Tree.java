@@ -1,5 +1,16 @@
+import java.util.ArrayList;
+import java.util.List;
+
 public class Tree<T extends Comparable<T>, V> {
     public Node<T,V> root;
+    public final TreeStats stats = new TreeStats();
+
+    // Internal nodes that merges took out of the tree, linked by parent - splits take them before they create
+    // new ones, so a delete and an insert that follow each other do not allocate
+    public static final int FREE_NODES = 256;
+    private Node<T,V> freeNodes;
+    private int freeCount;
+    private T sentinelMax; // the key of the last leaf, given to init or to the bulk constructor
 
     public static final Long LONG_SENTINEL_MAX = Long.MAX_VALUE;
     public static final Long LONG_SENTINEL_MIN = Long.MIN_VALUE;
@@ -13,37 +24,98 @@ public class Tree<T extends Comparable<T>, V> {
         this.root = null;
     }
 
+    public Tree(T sentinelMin, T sentinelMax){
+        init(sentinelMin, sentinelMax);
+    }
+
+    // Build the tree bottom up from leaves that are sorted by key, without the sentinels - O(n)
+    // Every level is split into groups of 3 nodes (and 2 at the end), which become the children of the next level
+    public Tree(T sentinelMin, T sentinelMax, List<? extends Node<T,V>> sortedLeaves){
+        this(sentinelMin, sentinelMax, sortedLeaves, true);
+    }
+
+    // distinctKeys == false - leaves may have equal keys, as insert allows (the events of a history at one timestamp)
+    public Tree(T sentinelMin, T sentinelMax, List<? extends Node<T,V>> sortedLeaves, boolean distinctKeys){
+        List<Node<T,V>> level = new ArrayList<>(sortedLeaves.size() + 2);
+        level.add(newNode(sentinelMin, null));
+        for (Node<T,V> leaf : sortedLeaves) {
+            int comparison = leaf.key.compareTo(level.get(level.size() - 1).key);
+            if (comparison < 0 || (comparison == 0 && (distinctKeys || level.size() == 1))) { // keys must be sorted
+                throw new IllegalArgumentException();
+            }
+            leaf.left = null;
+            leaf.middle = null;
+            leaf.right = null;
+            level.add(leaf);
+        }
+        if (level.get(level.size() - 1).key.compareTo(sentinelMax) >= 0) {
+            throw new IllegalArgumentException();
+        }
+        level.add(newNode(sentinelMax, null));
+        this.sentinelMax = sentinelMax;
+        linkSisters(level);
+        while (level.size() > 1) {
+            level = buildParents(level);
+        }
+        this.root = level.get(0);
+        this.root.parent = null;
+    }
+
+    // The sister of every leaf is the leaf before it
+    private void linkSisters(List<Node<T,V>> level) {
+        level.get(0).sister = null;
+        for (int i = 1; i < level.size(); i++) {
+            level.get(i).sister = level.get(i - 1);
+        }
+    }
+
+    private List<Node<T,V>> buildParents(List<Node<T,V>> children) {
+        int parentsCount = (children.size() + 2) / 3;
+        int parentsWithTwoChildren = 3 * parentsCount - children.size(); // the last 0, 1 or 2 parents get only 2 children
+        List<Node<T,V>> parents = new ArrayList<>(parentsCount);
+        int c = 0;
+        for (int p = 0; p < parentsCount; p++) {
+            Node<T,V> x = newNode(null, null);
+            if (p < parentsCount - parentsWithTwoChildren) {
+                x.setChildren(x, children.get(c), children.get(c + 1), children.get(c + 2));
+                c += 3;
+            } else {
+                x.setChildren(x, children.get(c), children.get(c + 1), null);
+                c += 2;
+            }
+            parents.add(x);
+        }
+        return parents;
+    }
+
     public void init(T sentinelMin, T sentinelMax){
         // Creates 3 new nodes with sentinels
-        Node<T, V> x = new Node<>(sentinelMax, null);  // Root node with max sentinel
-        Node<T, V> l = new Node<>(sentinelMin, null);  // Left child with min sentinel
-        Node<T, V> m = new Node<>(sentinelMax, null);  // Right child with max sentinel
+        Node<T, V> x = newNode(sentinelMax, null);  // Root node with max sentinel
+        Node<T, V> l = newNode(sentinelMin, null);  // Left child with min sentinel
+        Node<T, V> m = newNode(sentinelMax, null);  // Right child with max sentinel
         // Set node l, m parent
         x.setChildInit(l, m);
         // Send to Node class to set node x childes
         l.setParentInit(x);
         m.setParentInit(x);
+        m.sister = l;
         // Init the root of the tree
         this.root = x;
+        this.sentinelMax = sentinelMax;
     }
 
     public T getSentinelMax() {
-        T key = root.getKey();
-        if (key instanceof Long) {
-            return (T) LONG_SENTINEL_MAX;
-        } else if (key instanceof String) {
-            return (T) STRING_SENTINEL_MAX; // Maximum Unicode value
-        } else if (key instanceof Float) {
-            return (T) Float.valueOf(FLOAT_SENTINEL_MAX);
-        } else if (key instanceof Pair<?, ?>) {
-            return (T) new Pair<>(FLOAT_SENTINEL_MAX, STRING_SENTINEL_MAX);
-        }
-        return null;
+        return sentinelMax;
     }
 
+    // Every insert and delete touches O(log n) nodes: setChildren updates only the node it is called on,
+    // and the ancestors are updated once each on the way up to the root.
+    // The sister of every leaf is the leaf before it, and only the leaves keep a sister.
     public void insert(Node<T,V> stock) {   //stock variable is stockID
+        stats.inserts++;
         Node<T,V> y = this.root;
         while(y.left != null){ //check if y is not a leaf
+            stats.nodesVisited++;
             if(stock.compareTo(y.left) < 0){    // compare with the left children of y
                 y = y.left;
             } else if(stock.compareTo(y.middle) < 0){   // compare with the middle children of y
@@ -52,72 +124,99 @@ public class Tree<T extends Comparable<T>, V> {
                 y = y.right;
             }
         }
+        // y is the leaf after stock, so stock comes between y and the sister of y
+        stock.sister = y.sister;
+        y.sister = stock;
         Node<T,V> x = y.parent;
-        stock = insertAndSplit(x, stock); // we want to add stock as children of x
+        Node<T,V> previous = (y == x.left) ? null : (y == x.middle) ? x.left : x.middle; // the child before y
+        stock = insertAndSplit(x, stock, previous); // we want to add stock as children of x
         while (x != this.root) {
+            Node<T,V> child = x;
             x = x.parent;
+            stats.nodesVisited++;
             if(stock != null){
-                stock = insertAndSplit(x, stock);
+                stock = insertAndSplit(x, stock, child); // the new half of child comes right after it
             } else {
                 x.updateKey();
+                x.updateSize();
             }
         }
         if(stock != null){ // case that we create new root and connect the two nodes to it
-            Node<T,V> w = new Node<T,V>(null, null);
+            Node<T,V> w = newInternalNode();
             w.setChildren(w,x, stock, null);
             this.root = w;
-            stock.setSister();
-            stock.left.setSister();
         }
     }
 
-    public Node<T,V> insertAndSplit(Node<T,V> x, Node<T,V> stock) {
+    // Add stock to the children of x right after the child previous (first if previous is null) - if x had 3 children,
+    // split it and return the new node that should be added to the parent of x after x.
+    // The place is given and not found by comparing keys, since keys may be equal (the events of a history at one
+    // timestamp) and a node must stay between the same neighbors as in the order of the leaves
+    public Node<T,V> insertAndSplit(Node<T,V> x, Node<T,V> stock, Node<T,V> previous) {
         Node<T,V> l = x.left;
         Node<T,V> m = x.middle;
         Node<T,V> r = x.right;
         if(r == null){
-            if(stock.compareTo(l) < 0){
+            if(previous == null){
                 x.setChildren(x,stock, l, m);
-                x.left.setSister(); // In case stock is left Children update stock sister
-                x.middle.setSister(); // update sister of the middle children of x after adding stock as left child
-            } else if (stock.compareTo(m) < 0){
+            } else if (previous == l){
                 x.setChildren(x,l, stock, m);
-                x.middle.setSister(); // In case stock is middle Children update stock sister
-                x.right.setSister(); // update sister of the right children of x after adding stock as middle child
             } else {
                 x.setChildren(x,l, m, stock);
-                x.right.setSister(); // In case stock is right Children update stock sister
-                // Stock is x.right, then send to successor and find sister that should update
-                stock.left.setSister();
             }
             return null;
         }
-        Node<T,V> y = new Node<T,V>(null,null);
+        stats.splits++;
+        Node<T,V> y = newInternalNode();
         //split the 4 children of x to be 2 children of x and 2 children of y
-        if (stock.compareTo(l) < 0) {
+        if (previous == null) {
             x.setChildren(x,stock, l, null);
             y.setChildren(y,m, r, null);
-            x.middle.setSister();
-            x.left.setSister();
-        } else if (stock.compareTo(m) < 0) {
-            x.middle.sister = stock;
+        } else if (previous == l) {
             x.setChildren(x,l, stock, null);
             y.setChildren(y,m, r, null);
-            x.middle.setSister();
-        } else if (stock.compareTo(r) < 0) {
+        } else if (previous == m) {
             x.setChildren(x,l, m, null);
             y.setChildren(y,stock, r, null);
-            y.left.setSister();   // !!!!!!!!!!!!!!!!!!!!
-            y.middle.setSister();
         } else {
             x.setChildren(x,l, m, null);
             y.setChildren(y,r, stock, null);
-            y.middle.setSister();
-            y.sister = x;
         }
         return y;
     }
 
+    // The nodes the tree creates itself - the sentinels and the internal nodes. A tree whose nodes are a subclass
+    // of Node overrides it
+    protected Node<T,V> newNode(T key, V value) {
+        return new Node<>(key, value);
+    }
+
+    private Node<T,V> newInternalNode() {
+        Node<T,V> node = freeNodes;
+        if (node == null) {
+            return newNode(null, null);
+        }
+        freeNodes = node.parent;
+        freeCount--;
+        node.parent = null;
+        return node;
+    }
+
+    // Keep an internal node that left the tree for newInternalNode, or leave it to the garbage collector if enough are kept
+    private void freeInternalNode(Node<T,V> node) {
+        node.left = null;
+        node.middle = null;
+        node.right = null;
+        node.key = null;
+        if (freeCount < FREE_NODES) {
+            node.parent = freeNodes;
+            freeNodes = node;
+            freeCount++;
+        } else {
+            node.parent = null;
+        }
+    }
+
     public Node<T,V> search(Node<T,V> x,T key) { // x is the root and key is of the leaf we want to find
         if(x.left == null){
             if (x.key.compareTo(key) == 0){
@@ -134,6 +233,134 @@ public class Tree<T extends Comparable<T>, V> {
         }
     }
 
+    // The next 4 functions only read the tree - they descend from the root and never insert or delete nodes
+    public Node<T,V> lowerBound(T key) {    // Find the leaf with the smallest key among those with leaf.key >= key
+        return bound(key, true);
+    }
+
+    public Node<T,V> upperBound(T key) {    // Find the leaf with the smallest key among those with leaf.key > key
+        return bound(key, false);
+    }
+
+    public int countLess(T key) {   // returns the number of leaves with leaf.key < key
+        return countBefore(key, true);
+    }
+
+    public int countLessOrEqual(T key) {    // returns the number of leaves with leaf.key <= key
+        return countBefore(key, false);
+    }
+
+    // Check if the subtree of x may hold the bound of key - x.key is the maximum key in the subtree of x
+    protected boolean holdsBound(T key, Node<T,V> x, boolean inclusive) {
+        if (inclusive) {
+            return key.compareTo(x.key) <= 0;
+        }
+        return key.compareTo(x.key) < 0;
+    }
+
+    private Node<T,V> bound(T key, boolean inclusive) {
+        Node<T,V> x = this.root;
+        while (x.left != null) {
+            if (holdsBound(key, x.left, inclusive)) {
+                x = x.left;
+            } else if (x.middle != null && holdsBound(key, x.middle, inclusive)) {
+                x = x.middle;
+            } else if (x.right != null && holdsBound(key, x.right, inclusive)) {
+                x = x.right;
+            } else {
+                return null;    // key is not smaller than the max sentinel
+            }
+        }
+        if (x.key.compareTo(getSentinelMax()) < 0) {
+            return x;
+        }
+        return null;    // the bound is the max sentinel
+    }
+
+    // Sum the sizes of the subtrees we pass on the way down - sentinels have size 0, so they are never counted
+    private int countBefore(T key, boolean strict) {
+        int count = 0;
+        Node<T,V> x = this.root;
+        while (x.left != null) {
+            if (holdsBound(key, x.left, strict)) {
+                x = x.left;
+            } else if (x.middle != null && holdsBound(key, x.middle, strict)) {
+                count += x.left.size;
+                x = x.middle;
+            } else if (x.right != null) {
+                count += x.left.size + x.middle.size;
+                x = x.right;
+            } else {
+                return count + x.size;  // all the keys in the subtree of x are before key
+            }
+        }
+        if (!holdsBound(key, x, strict)) {
+            count += x.size;
+        }
+        return count;
+    }
+
+    // Every internal node has 2 or 3 children whose parent it is, its key is the key of its last child and its size
+    // the sum of their sizes, all the leaves are at the same depth in increasing order, and the sister of every leaf
+    // is the leaf before it - throws IllegalStateException if not. O(n), for stress tests
+    public void checkInvariants() {
+        if (root.parent != null) {
+            throw new IllegalStateException("the root has a parent");
+        }
+        List<Node<T,V>> leaves = new ArrayList<>();
+        checkSubtree(root, leaves);
+        for (int i = 0; i < leaves.size(); i++) {
+            Node<T,V> leaf = leaves.get(i);
+            boolean sentinel = (i == 0 || i == leaves.size() - 1);
+            if (leaf.size != (sentinel ? 0 : 1)) {
+                throw new IllegalStateException("leaf " + leaf.key + " has size " + leaf.size);
+            }
+            if (leaf.sister != (i == 0 ? null : leaves.get(i - 1))) {
+                throw new IllegalStateException("the sister of leaf " + leaf.key + " is not the leaf before it");
+            }
+            if (i > 0 && leaf.key.compareTo(leaves.get(i - 1).key) <= 0) {
+                throw new IllegalStateException("leaf " + leaf.key + " is out of order");
+            }
+        }
+        if (leaves.get(leaves.size() - 1).key.compareTo(sentinelMax) != 0) {
+            throw new IllegalStateException("the last leaf is not the max sentinel");
+        }
+    }
+
+    // Check the subtree of x and add its leaves to leaves - returns the height of the subtree
+    private int checkSubtree(Node<T,V> x, List<Node<T,V>> leaves) {
+        if (x.left == null) {
+            if (x.middle != null || x.right != null) {
+                throw new IllegalStateException("a leaf with children");
+            }
+            leaves.add(x);
+            return 0;
+        }
+        if (x.middle == null) {
+            throw new IllegalStateException("node " + x.key + " has one child");
+        }
+        int height = checkChild(x, x.left, leaves);
+        if (checkChild(x, x.middle, leaves) != height || (x.right != null && checkChild(x, x.right, leaves) != height)) {
+            throw new IllegalStateException("the leaves under node " + x.key + " are not at the same depth");
+        }
+        Node<T,V> last = (x.right != null) ? x.right : x.middle;
+        if (x.key.compareTo(last.key) != 0) {
+            throw new IllegalStateException("node " + x.key + " is not the maximum of its subtree " + last.key);
+        }
+        int size = x.left.size + x.middle.size + ((x.right != null) ? x.right.size : 0);
+        if (x.size != size) {
+            throw new IllegalStateException("node " + x.key + " has size " + x.size + " instead of " + size);
+        }
+        return height + 1;
+    }
+
+    private int checkChild(Node<T,V> x, Node<T,V> child, List<Node<T,V>> leaves) {
+        if (child.parent != x) {
+            throw new IllegalStateException("a child of node " + x.key + " has another parent");
+        }
+        return checkSubtree(child, leaves);
+    }
+
     public Node<T,V> minimum() {    // Find the leaf with the smallest key in the tree
         Node <T,V> x = this.root;
         while(x.left != null){
@@ -146,7 +373,62 @@ public class Tree<T extends Comparable<T>, V> {
         return null;    // tree is empty - we'll never get here
     }
 
+    public Node<T,V> select(int k) {    // the leaf at position k in the linear order of the leaves (the inverse of rank), or null
+        if (k < 1 || k > this.root.size) {
+            return null;
+        }
+        Node<T,V> x = this.root;
+        while (x.left != null) {    // sentinels have size 0, so they are never chosen
+            if (k <= x.left.size) {
+                x = x.left;
+            } else if (k <= x.left.size + x.middle.size) {
+                k -= x.left.size;
+                x = x.middle;
+            } else {
+                k -= x.left.size + x.middle.size;
+                x = x.right;
+            }
+        }
+        return x;
+    }
+
     public Node<T,V> successor(Node<T,V> x) {   // find the leaf y with the smallest key among those with y.key > x.key
+        Node<T,V> y = nextLeaf(x);
+        if (y.key.compareTo(getSentinelMax()) < 0) {
+            return y;
+        } else {
+            return null;
+        }
+    }
+
+    public Node<T,V> predecessor(Node<T,V> x) { // find the leaf y with the biggest key among those with y.key < x.key
+        Node<T,V> y = x.sister;
+        if (y.sister != null) {   // only the min sentinel has no sister
+            return y;
+        }
+        return null;
+    }
+
+    public Node<T,V> maximum() {    // Find the leaf with the biggest key in the tree, or null if the tree is empty
+        Node<T,V> x = this.root;
+        while (x.left != null) {
+            x = (x.right != null) ? x.right : x.middle;
+        }
+        return predecessor(x);  // x is the max sentinel
+    }
+
+    public Node<T,V> lastLess(T key) {  // Find the leaf with the biggest key among those with leaf.key < key
+        Node<T,V> x = lowerBound(key);
+        return (x == null) ? maximum() : predecessor(x);
+    }
+
+    public Node<T,V> lastLessOrEqual(T key) {   // Find the leaf with the biggest key among those with leaf.key <= key
+        Node<T,V> x = upperBound(key);
+        return (x == null) ? maximum() : predecessor(x);
+    }
+
+    // The leaf after x, the max sentinel included
+    private Node<T,V> nextLeaf(Node<T,V> x) {
         Node<T,V> z = x.parent;
         Node<T,V> y = null;
         while(x == z.right || (z.right == null && x == z.middle)){
@@ -161,64 +443,30 @@ public class Tree<T extends Comparable<T>, V> {
         while (y.left != null) {
             y = y.left;
         }
-        if (y.key.compareTo(getSentinelMax()) < 0) {
-            return y;
-        } else {
-            return null;
-        }
-    }
-
-    public Node<T, V> successorNotOnlyForLeaves(Node<T, V> x) {
-        Node<T, V> z = x.parent;
-        Node<T, V> y = null;
-        int levelUp = 0; // Track how many levels we moved up
-        // Traverse up until we find a valid parent where x is NOT the rightmost child
-        while (z != null && (x == z.right || (z.right == null && x == z.middle))) {
-            x = z;
-            z = z.parent;
-            levelUp++; // Keep track of how many levels we've moved up
-        }
-        // If x was not the rightmost child, find the next node in the same level
-        if (z != null) {
-            if (x == z.left) {
-                y = z.middle;
-            } else if (x == z.middle) {
-                y = z.right;
-            }
-        }
-        // Descend back down to the original height
-        while (y != null && levelUp > 0) {
-            y = y.left; // Always move left to stay within the correct subtree level
-            levelUp--;
-        }
-        // Return the valid successor at the correct height
         return y;
     }
 
     public void delete(Node<T,V> x) {
+        stats.deletes++;
+        // the leaf after x gets the sister of x
+        Node<T,V> next = nextLeaf(x);
+        next.sister = x.sister;
+        x.sister = null;
         Node<T,V> y = x.parent;
         if(x == y.left){
-            y.middle.sister = y.left.sister; // update y.middle sister to point on the update sister
             y.setChildren(y,y.middle, y.right, null); // delete y.left
         } else if(x == y.middle){
-            Node<T,V> rightSister = successor(x); /// added now
-            if (rightSister != null) {
-                rightSister.sister = x.sister; // added now
-            }
             y.setChildren(y,y.left, y.right, null);
-            if (y.middle != null){ // in case there is 2 children to y after deleting
-                y.middle.sister = y.left;
-            }
         } else { // x is y.right
-            Node<T,V> sister = successor(y.right);
-            sister.sister = y.middle;
             y.setChildren(y,y.left, y.middle, null);
         }
         // In this point, we disconnected x, then the garbage collector will delete it
 
         while(y != null) {
+            stats.nodesVisited++;
             if(y.middle != null) {
                 y.updateKey();
+                y.updateSize();
                 y = y.parent;
             } else { // In case y has 1 child
                 if(y != root){
@@ -226,62 +474,54 @@ public class Tree<T extends Comparable<T>, V> {
                 } else{
                     root = y.left;
                     y.left.parent = null;
+                    freeInternalNode(y);
                     return;
-                    // garbage collector will delete y
                 }
             }
         }
     }
 
+    // y has 1 child - borrow a child from the sibling of y if it has 3 children, otherwise merge y into the sibling
     public Node<T, V> borrowOrMerge(Node<T,V> y) {
         Node<T,V> z = y.parent;
         if(y == z.left){
             Node<T,V> x = z.middle;
             if(x.right != null){ // x has 3 children
+                stats.borrows++;
                 y.setChildren(y,y.left, x.left, null);
                 x.setChildren(x,x.middle, x.right, null);
             } else { // x has 2 children
+                stats.merges++;
                 x.setChildren(x,y.left, x.left, x.middle);
-                y.left = null; // then garbage collector will delete y
+                freeInternalNode(y);
                 z.setChildren(z,x, z.right, null);
-                x.setSister(); // after deleting y, we want x to point on its new sister
             }
             return z;
         }
         if(y == z.middle){
             Node<T,V> x = z.left;
             if(x.right != null){ // x has 3 children
+                stats.borrows++;
                 y.setChildren(y,x.right, y.left, null);
                 x.setChildren(x,x.left, x.middle, null);
             } else { // x has 2 children
-                if (z.right == null){
-                    Node<T,V> sister = successorNotOnlyForLeaves(y);
-                    if(sister != null){
-                        sister.sister = x;
-                    }
-                }
+                stats.merges++;
                 x.setChildren(x,x.left, x.middle, y.left);
-                y.left = null; // then garbage collector will delete y
-                y.sister = null;
+                freeInternalNode(y);
                 z.setChildren(z,x, z.right, null);
-                if(z.middle != null) {
-                    z.middle.sister = x;
-                }
             }
             return z;
         }
         Node <T,V> x = z.middle;
         if(x.right != null) { // x has 3 children
+            stats.borrows++;
             y.setChildren(y,x.right, y.left, null);
             x.setChildren(x,x.left, x.middle, null);
         } else { // x has 2 children
+            stats.merges++;
             x.setChildren(x,x.left, x.middle, y.left);
-            y.left = null;
+            freeInternalNode(y);
             z.setChildren(z,z.left, x, null);
-            Node<T,V> sister = successorNotOnlyForLeaves(x);
-            if(sister != null){
-                sister.setSister();
-            }
         }
         return z;
     }
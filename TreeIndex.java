@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// SortedIndex kept in the 2-3 Tree - a Node object for every key
+public class TreeIndex<K extends Comparable<K>, V> implements SortedIndex<K, V> {
+    public final Tree<K, V> tree;
+    private Node<K, V> spare;   // the leaf of the last delete - the next insert reuses it
+
+    public TreeIndex(K sentinelMin, K sentinelMax) {
+        this.tree = new Tree<>(sentinelMin, sentinelMax);
+    }
+
+    // Build the tree from sorted keys in O(n), see the bulk constructor of Tree
+    public TreeIndex(K sentinelMin, K sentinelMax, List<K> sortedKeys, List<V> values) {
+        List<Node<K, V>> leaves = new ArrayList<>(sortedKeys.size());
+        for (int i = 0; i < sortedKeys.size(); i++) {
+            leaves.add(new Node<>(sortedKeys.get(i), values.get(i)));
+        }
+        this.tree = new Tree<>(sentinelMin, sentinelMax, leaves);
+    }
+
+    @Override
+    public void insert(K key, V value) {
+        Node<K, V> node = spare;
+        if (node == null) {
+            node = new Node<>(key, value);
+        } else {
+            spare = null;
+            node.reset(key, value);
+        }
+        tree.insert(node);
+    }
+
+    @Override
+    public V search(K key) {
+        Node<K, V> node = tree.search(tree.root, key);
+        return (node == null) ? null : node.value;
+    }
+
+    @Override
+    public V delete(K key) {
+        Node<K, V> node = tree.search(tree.root, key);
+        if (node == null) {
+            return null;
+        }
+        tree.delete(node);
+        V value = node.value;
+        node.reset(null, null);     // keep neither the key nor the value from the garbage collector
+        spare = node;
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return tree.root.size;
+    }
+
+    @Override
+    public int countLess(K key) {
+        return tree.countLess(key);
+    }
+
+    @Override
+    public int countLessOrEqual(K key) {
+        return tree.countLessOrEqual(key);
+    }
+
+    @Override
+    public Cursor<K, V> select(int k) {
+        return new LeafCursor(tree.select(k));
+    }
+
+    @Override
+    public TreeStats stats() {
+        return tree.stats;
+    }
+
+    @Override
+    public void checkInvariants() {
+        tree.checkInvariants();
+    }
+
+    // Moves along the leaves - successor to the next leaf and the sister to the previous one
+    private class LeafCursor implements Cursor<K, V> {
+        private Node<K, V> node;    // null - not valid
+
+        LeafCursor(Node<K, V> node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean valid() {
+            return node != null;
+        }
+
+        @Override
+        public K key() {
+            return node.key;
+        }
+
+        @Override
+        public V value() {
+            return node.value;
+        }
+
+        @Override
+        public void next() {
+            node = tree.successor(node);
+        }
+
+        @Override
+        public void previous() {
+            node = tree.predecessor(node);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+// Counters of the work a Tree does in insert and delete, to check that every operation touches O(log n) nodes.
+// nodesVisited counts the nodes on the way down to the leaf and on the way back up to the root.
+public class TreeStats {
+    public long inserts;
+    public long deletes;
+    public long nodesVisited;
+    public long splits;
+    public long merges;
+    public long borrows;
+
+    // The average number of nodes an insert or a delete visited
+    public double nodesVisitedPerOperation() {
+        long operations = inserts + deletes;
+        if (operations == 0) {
+            return 0;
+        }
+        return (double) nodesVisited / operations;
+    }
+
+    public TreeStats copy() {
+        TreeStats copy = new TreeStats();
+        copy.inserts = inserts;
+        copy.deletes = deletes;
+        copy.nodesVisited = nodesVisited;
+        copy.splits = splits;
+        copy.merges = merges;
+        copy.borrows = borrows;
+        return copy;
+    }
+
+    public void reset() {
+        inserts = 0;
+        deletes = 0;
+        nodesVisited = 0;
+        splits = 0;
+        merges = 0;
+        borrows = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "inserts=" + inserts + ", deletes=" + deletes + ", nodesVisited=" + nodesVisited
+                + ", splits=" + splits + ", merges=" + merges + ", borrows=" + borrows;
+    }
+}
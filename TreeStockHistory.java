@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// StockHistory kept in a HistoryTree - a HistoryNode object for every event
+public class TreeStockHistory implements StockHistory {
+    public static final Long LONG_SENTINEL_MAX = Long.MAX_VALUE;
+    public static final Long LONG_SENTINEL_MIN = Long.MIN_VALUE;
+
+    public final HistoryTree tree;
+    private long checkpoint = Long.MIN_VALUE; // see checkpointTimestamp
+
+    public TreeStockHistory() {
+        this.tree = new HistoryTree(LONG_SENTINEL_MIN, LONG_SENTINEL_MAX);
+    }
+
+    // Build the history from events sorted by timestamp
+    public TreeStockHistory(long[] sortedTimestamps, float[] priceDifferences) {
+        List<HistoryNode> events = new ArrayList<>(sortedTimestamps.length);
+        for (int i = 0; i < sortedTimestamps.length; i++) {
+            events.add(new HistoryNode(sortedTimestamps[i], priceDifferences[i]));
+        }
+        this.tree = new HistoryTree(LONG_SENTINEL_MIN, LONG_SENTINEL_MAX, events);
+    }
+
+    @Override
+    public void add(long timestamp, float priceDifference) {
+        tree.insert(new HistoryNode(timestamp, priceDifference));
+    }
+
+    @Override
+    public boolean contains(long timestamp) {
+        return tree.search(tree.root, timestamp) != null;
+    }
+
+    @Override
+    public float remove(long timestamp) {
+        Node<Long, Float> event = tree.search(tree.root, timestamp);
+        if (event == null) {
+            throw new IllegalArgumentException();
+        }
+        tree.delete(event);
+        return event.value;
+    }
+
+    @Override
+    public long firstTimestamp() {
+        return tree.minimum().key;
+    }
+
+    @Override
+    public long lastTimestamp() {
+        return tree.maximum().key;
+    }
+
+    @Override
+    public double priceAt(long timestamp) {
+        return tree.prefixSum(timestamp);
+    }
+
+    @Override
+    public void priceExtremes(long from, long to, double[] result) {
+        tree.prefixExtremes(from, to, result);
+    }
+
+    @Override
+    public int size() {
+        return tree.root.size;
+    }
+
+    @Override
+    public void copyTo(long[] timestamps, float[] priceDifferences) {
+        int i = 0;
+        for (Node<Long, Float> event = tree.minimum(); event != null; event = tree.successor(event)) {
+            timestamps[i] = event.key;
+            priceDifferences[i] = event.value;
+            i++;
+        }
+    }
+
+    @Override
+    public boolean compact(long cutoff, int maxEvents) {
+        Node<Long, Float> first = tree.minimum();
+        if (first == null) {
+            return false;
+        }
+        Node<Long, Float> last = first;   // the last event to fold
+        Node<Long, Float> beforeLast = null;
+        double checkpointSum = first.value;
+        int folded = 1;
+        Node<Long, Float> event = tree.successor(first);
+        for (; event != null && event.key < cutoff && folded <= maxEvents; event = tree.successor(event)) {
+            beforeLast = last;
+            last = event;
+            checkpointSum += event.value;
+            folded++;
+        }
+        boolean more = event != null && event.key < cutoff; // maxEvents stopped the fold
+        if ((float) checkpointSum == 0) { // a checkpoint of 0 is not an event
+            if (folded > 2) {
+                checkpointSum -= last.value;
+                last = beforeLast;
+                folded--;
+            } else if (more) {
+                last = event;
+                checkpointSum += event.value;
+                folded++;
+            } else {
+                return false;
+            }
+        }
+        if (folded < 2) {
+            return more;
+        }
+        checkpoint = last.key;
+        for (int i = 0; i < folded; i++) {
+            tree.delete(tree.minimum());
+        }
+        add(checkpoint, (float) checkpointSum);
+        return more;
+    }
+
+    @Override
+    public long checkpointTimestamp() {
+        return checkpoint;
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.Arrays;
+
+// The past versions of the priceTree of a StockManager, for range queries as of a past timestamp.
+// The versions are 2-3 trees of immutable nodes: a change of a price copies only the path from the root to the leaf
+// it changed and shares every other node with the version before it, so a version costs O(log n) nodes, and a
+// query of any version is a query of its tree - O(log n) for a count and O(log n + k) for a list.
+// Every version is stamped with the largest event timestamp the manager was given up to it, and answers for the
+// timestamps from its stamp until the stamp of the next version. A change with an older timestamp (an event that
+// arrived late, removeStockTimestamp) cannot change the past, so it is in the version of the current stamp.
+// Versions older than the retention window are released: every timestamp in the window stays answerable.
+// Every method is synchronized, like RangeCache - the readers of ConcurrentStockManager query at the same time
+public class VersionedPriceIndex {
+    private long retention;     // the versions needed only for timestamps older than newest - retention are released
+    private long[] timestamps = new long[16];   // the stamp of every version, in increasing order
+    private PathNode[] roots = new PathNode[16]; // the root of every version, null for an empty tree
+    private int first;  // the versions kept are [first, end)
+    private int end;
+
+    private static final class PathNode {
+        final PriceKey key;         // leaf - its key, inner node - the maximum key in its subtree
+        final PathNode[] children;  // null for a leaf
+        final int size;             // the number of leaves in the subtree
+
+        PathNode(PriceKey key) {
+            this.key = key;
+            this.children = null;
+            this.size = 1;
+        }
+
+        PathNode(PathNode[] children) {
+            int size = 0;
+            for (PathNode child : children) {
+                size += child.size;
+            }
+            this.key = children[children.length - 1].key;
+            this.children = children;
+            this.size = size;
+        }
+    }
+
+    VersionedPriceIndex(long retention) {
+        setRetention(retention);
+    }
+
+    public synchronized long getRetention() {
+        return retention;
+    }
+
+    synchronized void setRetention(long retention) {
+        if (retention <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.retention = retention;
+        if (end > first) {
+            release(timestamps[end - 1]);
+        }
+    }
+
+    // The number of versions kept
+    public synchronized int size() {
+        return end - first;
+    }
+
+    // The oldest timestamp a query can ask for, or Long.MAX_VALUE if there is no version
+    public synchronized long getOldestTimestamp() {
+        return (end > first) ? timestamps[first] : Long.MAX_VALUE;
+    }
+
+    // Drop all the versions and start again from one version of the keys, sorted by PriceKey - O(n).
+    // The keys are copied, since the keys of the priceTree change their prices
+    synchronized void reset(long timestamp, PriceKey[] sortedKeys) {
+        Arrays.fill(roots, first, end, null);
+        first = 0;
+        end = 0;
+        if (sortedKeys.length == 0) {
+            record(timestamp, null);
+            return;
+        }
+        PathNode[] level = new PathNode[sortedKeys.length];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            level[i] = new PathNode(new PriceKey(sortedKeys[i].getPrice(), sortedKeys[i].getStockId()));
+        }
+        while (level.length > 1) { // parents of three children, and of two at the end, like the bulk build of ArenaTree
+            int parentsCount = (level.length + 2) / 3;
+            int parentsWithTwoChildren = 3 * parentsCount - level.length;
+            PathNode[] parents = new PathNode[parentsCount];
+            int c = 0;
+            for (int p = 0; p < parentsCount; p++) {
+                int childrenCount = (p < parentsCount - parentsWithTwoChildren) ? 3 : 2;
+                parents[p] = new PathNode(Arrays.copyOfRange(level, c, c + childrenCount));
+                c += childrenCount;
+            }
+            level = parents;
+        }
+        record(timestamp, level[0]);
+    }
+
+    // The price of stockId moved from prevPrice to newPrice (NaN - the stock was added or removed) - a new version
+    synchronized void priceChanged(long timestamp, String stockId, float prevPrice, float newPrice) {
+        PathNode root = (end > first) ? roots[end - 1] : null;
+        if (!Float.isNaN(prevPrice)) {
+            root = delete(root, new PriceKey(prevPrice, stockId));
+            while (root != null && root.children != null && root.children.length == 1) {
+                root = root.children[0]; // the root lost its last sibling - the tree is one level lower
+            }
+        }
+        if (!Float.isNaN(newPrice)) {
+            PriceKey key = new PriceKey(newPrice, stockId);
+            if (root == null) {
+                root = new PathNode(key);
+            } else {
+                PathNode[] split = insert(root, key);
+                root = (split.length == 1) ? split[0] : new PathNode(split);
+            }
+        }
+        record(timestamp, root);
+    }
+
+    // The amount of stocks with price in [price1, price2] as of timestamp
+    synchronized int count(long timestamp, float price1, float price2) {
+        PathNode root = version(timestamp);
+        return countBelow(root, new PriceKey(price2, null), true) - countBelow(root, new PriceKey(price1, null), false);
+    }
+
+    // The stockIds of the stocks with price in [price1, price2] as of timestamp, in the order of getStocksInPriceRange
+    synchronized String[] stockIds(long timestamp, float price1, float price2) {
+        PathNode root = version(timestamp);
+        PriceKey low = new PriceKey(price1, null);
+        PriceKey high = new PriceKey(price2, null);
+        String[] stockIds = new String[countBelow(root, high, true) - countBelow(root, low, false)];
+        if (root != null) {
+            collect(root, low, high, stockIds, 0);
+        }
+        return stockIds;
+    }
+
+    // The root of the last version stamped at timestamp or before it
+    private PathNode version(long timestamp) {
+        if (end == first || timestamp < timestamps[first]) {
+            throw new IllegalArgumentException("no version at " + timestamp + " - released or before the first version");
+        }
+        int low = first, high = end - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return roots[low];
+    }
+
+    private void record(long timestamp, PathNode root) {
+        if (end > first && timestamps[end - 1] >= timestamp) { // the same stamp - the new version replaces the last one
+            roots[end - 1] = root;
+        } else {
+            if (end == timestamps.length) {
+                int kept = end - first;
+                if (kept > timestamps.length / 2) { // grow, or else only move the kept versions to the start
+                    timestamps = Arrays.copyOf(timestamps, 2 * timestamps.length);
+                    roots = Arrays.copyOf(roots, 2 * roots.length);
+                }
+                System.arraycopy(timestamps, first, timestamps, 0, kept);
+                System.arraycopy(roots, first, roots, 0, kept);
+                Arrays.fill(roots, kept, end, null);
+                first = 0;
+                end = kept;
+            }
+            timestamps[end] = timestamp;
+            roots[end] = root;
+            end++;
+        }
+        release(timestamp);
+    }
+
+    // Release the versions that answer only for timestamps older than newest - retention
+    private void release(long newest) {
+        long cutoff = (newest < Long.MIN_VALUE + retention) ? Long.MIN_VALUE : newest - retention;
+        while (end - first > 1 && timestamps[first + 1] <= cutoff) {
+            roots[first] = null;
+            first++;
+        }
+    }
+
+    // Insert key under x - returns the new x, or the two halves of the new x if it split
+    private static PathNode[] insert(PathNode x, PriceKey key) {
+        if (x.children == null) {
+            int comparison = key.compareTo(x.key);
+            if (comparison == 0) {
+                throw new IllegalArgumentException();
+            }
+            PathNode leaf = new PathNode(key);
+            return (comparison < 0) ? new PathNode[] {leaf, x} : new PathNode[] {x, leaf};
+        }
+        int i = childFor(x, key);
+        PathNode[] children = replace(x.children, i, insert(x.children[i], key));
+        if (children.length <= 3) {
+            return new PathNode[] {new PathNode(children)};
+        }
+        return new PathNode[] {new PathNode(Arrays.copyOfRange(children, 0, 2)), new PathNode(Arrays.copyOfRange(children, 2, 4))};
+    }
+
+    // Delete key under x - returns the new x, which has a single child if it lost a child and had only two
+    // (the caller fixes it), or null if x is the leaf of key
+    private static PathNode delete(PathNode x, PriceKey key) {
+        if (x == null) {
+            throw new IllegalArgumentException();
+        }
+        if (x.children == null) {
+            if (key.compareTo(x.key) != 0) {
+                throw new IllegalArgumentException();
+            }
+            return null;
+        }
+        int i = childFor(x, key);
+        PathNode child = delete(x.children[i], key);
+        if (child == null) {
+            return new PathNode(replace(x.children, i));
+        }
+        if (child.children != null && child.children.length == 1) {
+            return new PathNode(borrowOrMerge(x.children, i, child.children[0]));
+        }
+        return new PathNode(replace(x.children, i, child));
+    }
+
+    // children[i] is left with the single child orphan - borrow a child of a sibling with three children,
+    // or else merge orphan into a sibling with two
+    private static PathNode[] borrowOrMerge(PathNode[] children, int i, PathNode orphan) {
+        int s = (i > 0) ? i - 1 : i + 1;
+        PathNode[] nephews = children[s].children;
+        if (nephews.length == 3) {
+            PathNode[] result = children.clone();
+            if (s < i) {
+                result[s] = new PathNode(Arrays.copyOfRange(nephews, 0, 2));
+                result[i] = new PathNode(new PathNode[] {nephews[2], orphan});
+            } else {
+                result[s] = new PathNode(Arrays.copyOfRange(nephews, 1, 3));
+                result[i] = new PathNode(new PathNode[] {orphan, nephews[0]});
+            }
+            return result;
+        }
+        PathNode merged = (s < i) ? new PathNode(new PathNode[] {nephews[0], nephews[1], orphan})
+                : new PathNode(new PathNode[] {orphan, nephews[0], nephews[1]});
+        PathNode[] result = replace(children, Math.max(i, s));
+        result[Math.min(i, s)] = merged;
+        return result;
+    }
+
+    // The first child whose maximum is not smaller than key, or the last child
+    private static int childFor(PathNode x, PriceKey key) {
+        for (int i = 0; i < x.children.length - 1; i++) {
+            if (key.compareTo(x.children[i].key) <= 0) {
+                return i;
+            }
+        }
+        return x.children.length - 1;
+    }
+
+    // A copy of children with children[i] replaced by nodes (none - children[i] is removed)
+    private static PathNode[] replace(PathNode[] children, int i, PathNode... nodes) {
+        PathNode[] result = new PathNode[children.length - 1 + nodes.length];
+        System.arraycopy(children, 0, result, 0, i);
+        System.arraycopy(nodes, 0, result, i, nodes.length);
+        System.arraycopy(children, i + 1, result, i + nodes.length, children.length - i - 1);
+        return result;
+    }
+
+    // The number of leaves with key smaller than bound (or equal to it, if inclusive) - the subtrees whose maximum
+    // is below the bound are counted whole, so this goes down one path
+    private static int countBelow(PathNode x, PriceKey bound, boolean inclusive) {
+        int count = 0;
+        while (x != null) {
+            if (x.children == null) {
+                return count + (below(x.key, bound, inclusive) ? 1 : 0);
+            }
+            PathNode next = null;
+            for (PathNode child : x.children) {
+                if (below(child.key, bound, inclusive)) {
+                    count += child.size;
+                } else {
+                    next = child;
+                    break;
+                }
+            }
+            x = next;
+        }
+        return count;
+    }
+
+    private static boolean below(PriceKey key, PriceKey bound, boolean inclusive) {
+        int comparison = key.compareTo(bound);
+        return inclusive ? comparison <= 0 : comparison < 0;
+    }
+
+    // Put the stockIds of the leaves under x with key in [low, high] in stockIds from index n on, in key order -
+    // returns the next free index
+    private static int collect(PathNode x, PriceKey low, PriceKey high, String[] stockIds, int n) {
+        if (x.children == null) {
+            if (x.key.compareTo(low) >= 0 && x.key.compareTo(high) <= 0) {
+                stockIds[n++] = x.key.getStockId();
+            }
+            return n;
+        }
+        for (PathNode child : x.children) {
+            if (child.key.compareTo(low) < 0) {
+                continue;   // the whole subtree is below the range
+            }
+            n = collect(child, low, high, stockIds, n);
+            if (child.key.compareTo(high) > 0) {
+                break;      // the subtrees after it are above the range
+            }
+        }
+        return n;
+    }
+}
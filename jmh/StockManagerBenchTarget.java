@@ -0,0 +1,109 @@
+import benchmarks.StockManagerBench;
+import java.util.Random;
+
+// The StockManager of the JMH benchmarks in jmh/benchmarks, see StockManagerBench
+public class StockManagerBenchTarget implements StockManagerBench {
+    private static final float PRICE_RANGE = 1000;  // the prices are spread in [1, 1 + PRICE_RANGE]
+    private static final int INPUTS = 1 << 16;      // the drawn stocks, differences and ranges, used in turn
+
+    private StockManager manager;
+    private String[] stockIds;
+    private long nextTimestamp;     // bigger than the timestamp of every event of the stocks
+    private final String[] newStockIds = new String[BATCH]; // "NEW<i>", with their prices
+    private final Float[] newPrices = new Float[BATCH];
+    private final String[] eventStocks = new String[BATCH]; // the stocks of the events of drawEvents
+    private final int[] inputStocks = new int[INPUTS];
+    private final Float[] differences = new Float[INPUTS];  // price differences of the updates, +-0.01
+    private final Float[] rangeLows = new Float[INPUTS];    // bands of 1% of the prices
+    private final Float[] rangeHighs = new Float[INPUTS];
+    private int next;
+
+    @Override
+    public void load(int stocks, int depth, String historyBackend, int fanout) {
+        IndexBackend indexBackend = (fanout == 0) ? IndexBackend.TWO_THREE : IndexBackend.bPlus(fanout);
+        manager = new StockManager(HistoryBackend.valueOf(historyBackend), indexBackend, indexBackend);
+        Random random = new Random(42);
+        stockIds = new String[stocks];
+        long[][] timestamps = new long[stocks][depth];
+        float[][] prices = new float[stocks][depth];
+        for (int i = 0; i < stocks; i++) {
+            stockIds[i] = "S" + i;
+            for (int j = 0; j < depth; j++) {
+                timestamps[i][j] = j + 1;
+                prices[i][j] = (j == 0) ? 1 + random.nextFloat() * PRICE_RANGE : (random.nextBoolean() ? 0.01f : -0.01f);
+            }
+        }
+        manager.loadStocks(stockIds, timestamps, prices);
+        nextTimestamp = depth + 1;
+
+        for (int i = 0; i < BATCH; i++) {
+            newStockIds[i] = "NEW" + i;
+            newPrices[i] = 1 + random.nextFloat() * PRICE_RANGE;
+        }
+        for (int i = 0; i < INPUTS; i++) {
+            inputStocks[i] = random.nextInt(stocks);
+            differences[i] = random.nextBoolean() ? 0.01f : -0.01f;
+            rangeLows[i] = 1 + random.nextFloat() * PRICE_RANGE;
+            rangeHighs[i] = rangeLows[i] + PRICE_RANGE / 100;
+        }
+    }
+
+    // The index of the next drawn stock, difference and range
+    private int nextInput() {
+        next = (next + 1) & (INPUTS - 1);
+        return next;
+    }
+
+    @Override
+    public Float getStockPrice() {
+        return manager.getStockPrice(stockIds[inputStocks[nextInput()]]);
+    }
+
+    @Override
+    public int getAmountStocksInPriceRange() {
+        int range = nextInput();
+        return manager.getAmountStocksInPriceRange(rangeLows[range], rangeHighs[range]);
+    }
+
+    @Override
+    public String[] getStocksInPriceRange() {
+        int range = nextInput();
+        return manager.getStocksInPriceRange(rangeLows[range], rangeHighs[range]);
+    }
+
+    @Override
+    public void addNewStocks() {
+        for (int i = 0; i < BATCH; i++) {
+            manager.addStock(newStockIds[i], 1, newPrices[i]);
+        }
+    }
+
+    @Override
+    public void removeNewStocks() {
+        for (int i = 0; i < BATCH; i++) {
+            manager.removeStock(newStockIds[i]);
+        }
+    }
+
+    @Override
+    public void drawEvents() {
+        for (int i = 0; i < BATCH; i++) {
+            eventStocks[i] = stockIds[inputStocks[nextInput()]];
+        }
+    }
+
+    // The event i of the batch is at nextTimestamp + i - removeEvents frees the timestamps for the next batch
+    @Override
+    public void updateEvents() {
+        for (int i = 0; i < BATCH; i++) {
+            manager.updateStock(eventStocks[i], nextTimestamp + i, differences[nextInput()]);
+        }
+    }
+
+    @Override
+    public void removeEvents() {
+        for (int i = 0; i < BATCH; i++) {
+            manager.removeStockTimestamp(eventStocks[i], nextTimestamp + i);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// An iteration adds BATCH new stocks, and they are removed after it.
+// The score is the time of one addStock - the throughput is 10^9 / score.
+// -prof gc counts the whole iteration, so its bytes per operation are of an addStock and a removeStock together
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(StockManagerBench.BATCH)
+@Warmup(iterations = 50)
+@Measurement(iterations = 20)
+@Fork(1)
+public class AddStockBenchmark extends StockManagerState {
+    @Benchmark
+    public void addStock() {
+        bench.addNewStocks();
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeNewStocks() {
+        bench.removeNewStocks();
+    }
+}
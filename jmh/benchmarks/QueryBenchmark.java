@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The queries - they do not change the stocks, so every benchmark runs for the time of an iteration
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark extends StockManagerState {
+    @Benchmark
+    public Float getStockPrice() {
+        return bench.getStockPrice();
+    }
+
+    @Benchmark
+    public int getAmountStocksInPriceRange() {
+        return bench.getAmountStocksInPriceRange();
+    }
+
+    @Benchmark
+    public String[] getStocksInPriceRange() {
+        return bench.getStocksInPriceRange();
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+// BATCH events are added to random stocks before an iteration, and the iteration removes them.
+// The score is the time of one removeStockTimestamp - the throughput is 10^9 / score.
+// -prof gc counts the whole iteration, so its bytes per operation are of an updateStock and a removeStockTimestamp
+// together
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(StockManagerBench.BATCH)
+@Warmup(iterations = 50)
+@Measurement(iterations = 20)
+@Fork(1)
+public class RemoveStockTimestampBenchmark extends StockManagerState {
+    @Setup(Level.Iteration)
+    public void addEvents() {
+        bench.drawEvents();
+        bench.updateEvents();
+    }
+
+    @Benchmark
+    public void removeStockTimestamp() {
+        bench.removeEvents();
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+// The StockManager of the benchmarks, behind an interface: JMH needs the benchmarks in a package, and a class in a
+// package cannot use the classes of the default package, like StockManager. The implementation, StockManagerBenchTarget,
+// is in the default package and is created by its name. Every benchmark calls one implementation, so the JIT
+// inlines the calls and they cost nothing.
+// The stocks, the prices and the price ranges are drawn and boxed before the benchmarks run, so the benchmarks
+// measure only the calls of the StockManager, and -prof gc counts only what they allocate
+public interface StockManagerBench {
+    int BATCH = 10000;  // the changes of an iteration of the benchmarks that change the stocks
+
+    // Fails at once if the stocks cannot fit the heap, instead of running out of memory in the middle of the load -
+    // JMH reports the trial as failed and goes on with the next one
+    static StockManagerBench create(int stocks, int depth, String historyBackend, int fanout) {
+        // the heap of a stock and of an event with the ARENA history, rounded down - a lower bound of what they need
+        long stockBytes = 800;
+        long eventBytes = 100;
+        long bytes = stocks * (stockBytes + depth * eventBytes);
+        long heap = Runtime.getRuntime().maxMemory();
+        if (bytes > heap) {
+            throw new IllegalStateException(String.format("%d stocks of depth %d need more than %d MB, the heap is %d MB"
+                    + " - run them with a bigger heap, for example -jvmArgs -Xmx%dg", stocks, depth, bytes >> 20,
+                    heap >> 20, 2 + (bytes >> 30) * 3 / 2));
+        }
+        StockManagerBench bench;
+        try {
+            bench = (StockManagerBench) Class.forName("StockManagerBenchTarget").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        bench.load(stocks, depth, historyBackend, fanout);
+        return bench;
+    }
+
+    // Load stocks stocks with depth events each, in bulk - fanout is the fanout of B+ tree indexes for priceTree
+    // and stockIDTree (0 - the 2-3 Tree)
+    void load(int stocks, int depth, String historyBackend, int fanout);
+
+    // The queries, on a drawn stock or range
+    Float getStockPrice();
+
+    int getAmountStocksInPriceRange();
+
+    String[] getStocksInPriceRange();
+
+    // addStock and removeStock of the same BATCH new stocks
+    void addNewStocks();
+
+    void removeNewStocks();
+
+    // Draw the stocks of the next BATCH events - updateEvents adds them, and removeEvents removes them
+    void drawEvents();
+
+    void updateEvents();
+
+    void removeEvents();
+}
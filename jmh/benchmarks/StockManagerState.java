@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// The stocks of the benchmarks, loaded once a trial. The benchmarks that change the stocks undo their changes
+// between the iterations, so every iteration sees the same stocks and depth.
+// The defaults are 10^3 to 10^6 stocks. 10^6 stocks of depth 100 need about 12 GB, so with a smaller heap that trial
+// fails at once (see StockManagerBench.create) and the others run. 10^7 stocks are not in the defaults - they fit
+// only with depth 1 and a big heap: -p stocks=10000000 -p depth=1 -jvmArgs -Xmx16g
+@State(Scope.Benchmark)
+public abstract class StockManagerState {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int stocks;
+
+    @Param({"1", "100"})
+    public int depth;
+
+    @Param({"ARENA"})   // ARENA, TREE or COLUMNAR
+    public String historyBackend;
+
+    @Param({"0"})       // the fanout of B+ tree indexes (0 - the 2-3 Tree)
+    public int fanout;
+
+    protected StockManagerBench bench;
+
+    @Setup(Level.Trial)
+    public void load() {
+        bench = StockManagerBench.create(stocks, depth, historyBackend, fanout);
+    }
+}
@@ -0,0 +1,41 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// An iteration adds BATCH events to random stocks, and they are removed after it, so the depth stays the same.
+// The score is the time of one updateStock - the throughput is 10^9 / score.
+// -prof gc counts the whole iteration, so its bytes per operation are of an updateStock and a removeStockTimestamp
+// together (AllocationCheck checks updateStock alone)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(StockManagerBench.BATCH)
+@Warmup(iterations = 50)
+@Measurement(iterations = 20)
+@Fork(1)
+public class UpdateStockBenchmark extends StockManagerState {
+    @Setup(Level.Iteration)
+    public void drawEvents() {
+        bench.drawEvents();
+    }
+
+    @Benchmark
+    public void updateStock() {
+        bench.updateEvents();
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeEvents() {
+        bench.removeEvents();
+    }
+}